@@ -0,0 +1,156 @@
+package apptesting;
+
+import java.util.*;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/*
+ * The Answer class is an option chosen for a question that has not been applied to the page yet.
+ * Answers can be applied one at a time with the same WebDriver commands the questions always used,
+ * or all answers for a page can be applied together in a single script call that clicks, selects and
+ * types in the browser and dispatches the input and change events the app listens for. An answer applied
+ * on its own remembers how many of its steps were done, so if an element goes stale part way the answer
+ * chosen again from the re-rendered page only does the rest.
+ */
+public class Answer {
+    /*
+     * How an answer is applied: a WebDriver click, a click through JavaScript, choosing an
+     * option of a select element, or typing into a text input
+     */
+    public enum Kind { CLICK, SCRIPT_CLICK, SELECT, TEXT }
+
+    private static final String SCRIPT =
+        "function fire(el) {"
+        + "  el.dispatchEvent(new Event('input', {bubbles: true}));"
+        + "  el.dispatchEvent(new Event('change', {bubbles: true}));"
+        + "}"
+        + "var answers = arguments[0];"
+        + "for (var i = 0; i < answers.length; i++) {"
+        + "  var kind = answers[i][0];"
+        + "  var elements = answers[i][1];"
+        + "  var input = answers[i][2];"
+        + "  if (kind == 'SELECT') {"
+        + "    elements[0].selected = true;"
+        + "    fire(input);"
+        + "  } else if (kind == 'TEXT') {"
+        + "    var setter = Object.getOwnPropertyDescriptor(HTMLInputElement.prototype, 'value').set;"
+        + "    setter.call(input, input.value + answers[i][3]);"
+        + "    fire(input);"
+        + "  } else {"
+        + "    for (var j = 0; j < elements.length; j++) {"
+        + "      elements[j].click();"
+        + "    }"
+        + "  }"
+        + "}";
+
+    private static final String CLICK_SCRIPT =
+        "var elements = arguments[0];"
+        + "for (var i = 0; i < elements.length; i++) {"
+        + "  elements[i].click();"
+        + "}";
+
+    private Kind kind;
+    private List<WebElement> elements;
+    private WebElement input;
+    private String value;
+    private int applied = 0;
+
+    /*
+     * Constructs a new Answer
+     * @param kind - how the answer is applied
+     * @param elements - the option elements to click or select
+     * @param input - the select or text input element, or null
+     * @param value - the text to type, or null
+     */
+    public Answer(Kind kind, List<WebElement> elements, WebElement input, String value) {
+        this.kind = kind;
+        this.elements = elements;
+        this.input = input;
+        this.value = value;
+    }
+
+    /*
+     * @param kind - CLICK or SCRIPT_CLICK
+     * @param element - the option element to click
+     * @return - a new Answer clicking the given element
+     */
+    public static Answer click(Kind kind, WebElement element) {
+        return new Answer(kind, Collections.singletonList(element), null, null);
+    }
+
+    /*
+     * Applies the answer on its own with WebDriver commands, skipping the steps already done
+     * @param driver - the Selenium WebDriver on the page
+     */
+    public void apply(WebDriver driver) {
+        switch (kind) {
+        case SELECT:
+            if (applied == 0) {
+                input.click();
+                applied++;
+            }
+            elements.get(0).click();
+            applied++;
+            break;
+        case TEXT:
+            input.sendKeys(value);
+            applied++;
+            break;
+        case SCRIPT_CLICK:
+            //One call clicks every element or, if one has gone stale, none, so the answer can be applied again
+            ((JavascriptExecutor) driver).executeScript(CLICK_SCRIPT, elements);
+            applied = elements.size();
+            break;
+        default:
+            for (; applied < elements.size(); applied++) {
+                elements.get(applied).click();
+            }
+        }
+    }
+
+    /*
+     * Carries over the steps a stale answer for the same option already applied, so apply() only does the
+     * rest. Used with the answer chosen again from the page after it re-rendered.
+     * @param stale - the answer whose elements went stale
+     * @return - this Answer
+     */
+    public Answer continuing(Answer stale) {
+        applied = stale.applied;
+        return this;
+    }
+
+    /*
+     * @return - true if any element of the answer is no longer on the page
+     */
+    public boolean isStale() {
+        try {
+            for (WebElement element : elements) {
+                element.isEnabled();
+            }
+            if (input != null) {
+                input.isEnabled();
+            }
+            return false;
+        } catch (StaleElementReferenceException e) {
+            return true;
+        }
+    }
+
+    /*
+     * Applies the given answers, in order, in a single script call
+     * @param driver - the Selenium WebDriver on the page
+     * @param answers - the answers to apply
+     */
+    public static void applyAll(WebDriver driver, List<Answer> answers) {
+        if (answers.isEmpty()) {
+            return;
+        }
+        List<Object> arguments = new ArrayList<Object>();
+        for (Answer answer : answers) {
+            arguments.add(Arrays.asList(answer.kind.name(), answer.elements, answer.input, answer.value));
+        }
+        ((JavascriptExecutor) driver).executeScript(SCRIPT, arguments);
+    }
+}
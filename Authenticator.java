@@ -0,0 +1,21 @@
+package apptesting;
+
+import org.openqa.selenium.WebDriver;
+
+/*
+ * The Authenticator interface logs a browser session in to AfterPattern, so a DriverPool can log in once and
+ * share the session cookies with its other browsers.
+ */
+public interface Authenticator {
+    /*
+     * Logs in with the given browser, leaving it on the project page
+     * @param driver - the WebDriver to log in with
+     */
+    void login(WebDriver driver);
+
+    /*
+     * @param driver - a WebDriver that has just loaded the project page
+     * @return - true if the project page was shown rather than the login page
+     */
+    boolean isLoggedIn(WebDriver driver);
+}
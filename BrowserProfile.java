@@ -0,0 +1,112 @@
+package apptesting;
+
+import java.util.*;
+import org.openqa.selenium.PageLoadStrategy;
+import org.openqa.selenium.chrome.ChromeOptions;
+
+/*
+ * The BrowserProfile class holds the Chrome settings used for sweeps. By default Chrome renders the app as a
+ * user would see it, with only link prefetching turned off. Sweeps that have been checked against it can opt
+ * in to settings tuned for throughput: headless, images not loaded, analytics and web font domains resolved
+ * to nowhere, and navigation returning as soon as the document is parsed instead of after every resource has
+ * loaded. Each of these changes what a run observes, for example an app whose questions only appear once
+ * its fonts or a third-party script have loaded, so each is turned on separately.
+ */
+public class BrowserProfile {
+    /*
+     * Domains that serve analytics, tag managers and web fonts, which AfterPattern apps do not need to work
+     */
+    public static final String[] DEFAULT_BLOCKED_DOMAINS = {"google-analytics.com", "www.google-analytics.com",
+        "googletagmanager.com", "www.googletagmanager.com", "stats.g.doubleclick.net", "static.hotjar.com",
+        "script.hotjar.com", "cdn.segment.com", "api.segment.io", "fonts.googleapis.com", "fonts.gstatic.com"};
+
+    private boolean headless = false;
+    private boolean blockImages = false;
+    private List<String> blockedDomains = new ArrayList<String>();
+    private boolean prefetch = false;
+    private PageLoadStrategy pageLoadStrategy = PageLoadStrategy.NORMAL;
+    private int cacheSize = 0;
+
+    /*
+     * Sets whether Chrome runs without a window
+     * @param headless - whether to run headless
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    /*
+     * Sets whether images are loaded
+     * @param blockImages - whether to skip loading images
+     */
+    public void setBlockImages(boolean blockImages) {
+        this.blockImages = blockImages;
+    }
+
+    /*
+     * Sets the domains whose requests fail right away because they resolve to nowhere, such as
+     * DEFAULT_BLOCKED_DOMAINS
+     * @param domains - the host names to block, or none to block nothing
+     */
+    public void setBlockedDomains(String... domains) {
+        blockedDomains = new ArrayList<String>(Arrays.asList(domains));
+    }
+
+    /*
+     * Sets whether Chrome prefetches links and resolves host names ahead of navigation
+     * @param prefetch - whether to prefetch
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /*
+     * Sets when navigation returns: NORMAL waits for every resource, EAGER only for the document to be parsed
+     * @param pageLoadStrategy - the PageLoadStrategy to use
+     */
+    public void setPageLoadStrategy(PageLoadStrategy pageLoadStrategy) {
+        this.pageLoadStrategy = pageLoadStrategy;
+    }
+
+    /*
+     * Sets the size of the HTTP disk cache, which keeps the app's scripts and styles between runs
+     * @param bytes - the cache size in bytes, or 0 for Chrome's default
+     */
+    public void setCacheSize(int bytes) {
+        cacheSize = bytes;
+    }
+
+    /*
+     * @return - ChromeOptions applying every setting of the profile
+     */
+    public ChromeOptions toChromeOptions() {
+        ChromeOptions options = new ChromeOptions();
+        options.setHeadless(headless);
+        options.setPageLoadStrategy(pageLoadStrategy);
+        options.addArguments("--disable-extensions", "--disable-background-networking", "--mute-audio",
+                "--window-size=1280,1024");
+
+        HashMap<String, Object> prefs = new HashMap<String, Object>();
+        if (blockImages) {
+            prefs.put("profile.managed_default_content_settings.images", 2);
+        }
+        if (!prefetch) {
+            //2 is "never" for network predictions such as link prefetch and DNS preconnect
+            prefs.put("net.network_prediction_options", 2);
+            options.addArguments("--dns-prefetch-disable");
+        }
+        options.setExperimentalOption("prefs", prefs);
+
+        if (!blockedDomains.isEmpty()) {
+            StringBuilder rules = new StringBuilder();
+            for (String domain : blockedDomains) {
+                rules.append(rules.length() == 0 ? "" : ", ").append("MAP ").append(domain).append(" ~NOTFOUND");
+            }
+            options.addArguments("--host-resolver-rules=" + rules);
+        }
+        if (cacheSize > 0) {
+            options.addArguments("--disk-cache-size=" + cacheSize);
+        }
+        return options;
+    }
+}
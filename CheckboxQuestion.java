@@ -1,57 +1,52 @@
 package apptesting;
 
 import java.util.*;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.ss.usermodel.Cell;
-import org.openqa.selenium.By;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.JavascriptExecutor;
 
 public class CheckboxQuestion extends Question {
 	private int[] defaultResponse = {0};
 	
 	//Constructor without custom default response
-	public CheckboxQuestion(WebDriver driver, XSSFSheet sheet, String text, int column, String mode, int numResponses) {
-		super(driver, sheet, text, column, mode, numResponses);
+	public CheckboxQuestion(WebDriver driver, String text, String mode, int numResponses) {
+		super(driver, text, mode, numResponses);
 	}
 	
 	//Constructor with custom default response
-	public CheckboxQuestion(WebDriver driver, XSSFSheet sheet, String text, int column, String mode, int numResponses, int[] defaultResponse) {
-		super(driver, sheet, text, column, mode, numResponses);
+	public CheckboxQuestion(WebDriver driver, String text, String mode, int numResponses, int[] defaultResponse) {
+		super(driver, text, mode, numResponses);
 		this.defaultResponse = defaultResponse;
 	}
 	
-	//Implementation of test method from parent class
-	public void test(int option, int position) {
-		List<WebElement> options = getDriver().findElements(By.xpath(getXpath(position) + "//p"));
+	//Implementation of choose method from parent class
+	public Answer choose(int option, PageSnapshot.Field field) {
+		List<WebElement> options = field.getOptions();
+		Answer answer;
 		switch (getMode()) {
 		case "test":
-			click(options.get(option));
-			setLastOption(option == options.size() - 1);
+			answer = click(field, option);
 			break;
 		case "random":
-			Random r = new Random();
-			click(options.get(r.nextInt(options.size())));
+			answer = click(field, randomOption(options.size()));
 			break;
 		default:
-			Cell cell = getSheet().getRow(getSheet().getLastRowNum()).createCell(getColumn());
-			
-			((JavascriptExecutor) getDriver()).executeScript("arguments[0].click();", options.get(defaultResponse[0]));
-			String s = options.get(defaultResponse[0]).getText();
+			List<WebElement> selected = new ArrayList<WebElement>();
+			selected.add(options.get(defaultResponse[0]));
+			String s = field.getOptionTexts().get(defaultResponse[0]);
 			for (int i = 1; i < defaultResponse.length; i++) {
-				((JavascriptExecutor) getDriver()).executeScript("arguments[0].click();", options.get(defaultResponse[i]));
-				s += ", " + options.get(defaultResponse[i]).getText();
+				selected.add(options.get(defaultResponse[i]));
+				s += ", " + field.getOptionTexts().get(defaultResponse[i]);
 			}
-			cell.setCellValue(s);
+			print(s);
+			answer = new Answer(Answer.Kind.SCRIPT_CLICK, selected, null, null);
 		}
+		return answer;
 	}
 	
-	//Clicks given option and records in given XSSFSheet
-	private void click(WebElement option) {
-		Cell cell = getSheet().getRow(getSheet().getLastRowNum()).createCell(getColumn());
-		cell.setCellValue(option.getText());
-		((JavascriptExecutor) getDriver()).executeScript("arguments[0].click();", option);
+	//Chooses given option to click and records the selection in the run
+	private Answer click(PageSnapshot.Field field, int option) {
+		print(field.getOptionTexts().get(option));
+		return Answer.click(Answer.Kind.SCRIPT_CLICK, field.getOptions().get(option));
 	}
 }
 
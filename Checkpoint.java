@@ -0,0 +1,146 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * The Checkpoint class keeps an append-only file of completed runs so a sweep that crashes can be restarted
+ * without repeating them. Each record holds the run's combination index, its result and the printed answers,
+ * with question texts, answers and results stored once in a dictionary, in the RunFile format shared with
+ * RunLog. Records are buffered and the file is only forced to disk every few runs, so checkpointing costs
+ * almost nothing per run; at most the last batch is lost and rerun. Only the positions of the records are kept
+ * in memory, and rows are read back from the file when needed.
+ */
+public class Checkpoint extends RunFile {
+    private HashMap<Long, Long> offsets = new HashMap<Long, Long>();
+
+    /*
+     * Opens the checkpoint file at the given path, loading any runs completed by an earlier process
+     * @param path - the path of the checkpoint file as a String
+     * @param syncEvery - the number of runs between forcing the file to disk as an integer
+     */
+    public Checkpoint(String path, int syncEvery) throws IOException {
+        this(path, syncEvery, false);
+    }
+
+    /*
+     * Opens the checkpoint file at the given path, for reading only or for recording
+     */
+    private Checkpoint(String path, int syncEvery, boolean readOnly) throws IOException {
+        super(syncEvery);
+        open(path, readOnly);
+    }
+
+    /*
+     * Opens the checkpoint file at the given path without changing it, for tools such as ShardMerger that
+     * read a file a sweep may still be appending to. A partial record at the end is skipped, not removed,
+     * and nothing can be recorded.
+     * @param path - the path of the checkpoint file as a String
+     * @return - the read-only Checkpoint
+     */
+    public static Checkpoint readOnly(String path) throws IOException {
+        return new Checkpoint(path, 1, true);
+    }
+
+    /*
+     * Checks the checkpoint belongs to the given set of runs, recording it if the checkpoint is new
+     * @param plan - a description of the runs, such as the options of each question and the strength
+     */
+    public synchronized void setPlan(String plan) throws IOException {
+        String recorded = writePlan(plan);
+        if (recorded != null && !recorded.equals(plan)) {
+            throw new IllegalStateException("Checkpoint was made for different runs: " + recorded);
+        }
+    }
+
+    /*
+     * Records a question discovered while running so it can be created again on restart
+     * @param text - the question text as a String
+     * @param type - the question type as a String
+     */
+    public synchronized void addQuestion(String text, String type) throws IOException {
+        columnId(text, type);
+    }
+
+    /*
+     * @return - the text and type of each question discovered while running, in the order discovered
+     */
+    public synchronized List<String[]> getQuestions() {
+        List<String> names = getColumnNames();
+        List<String> types = getColumnTypes();
+        List<String[]> discovered = new ArrayList<String[]>();
+        for (int i = 0; i < names.size(); i++) {
+            if (!types.get(i).isEmpty()) {
+                discovered.add(new String[] {names.get(i), types.get(i)});
+            }
+        }
+        return discovered;
+    }
+
+    /*
+     * @param index - the combination index
+     * @return - true if the run has been completed
+     */
+    public synchronized boolean isDone(long index) {
+        return offsets.containsKey(index);
+    }
+
+    /*
+     * @return - the combination index of every completed run, in ascending order
+     */
+    public synchronized List<Long> getIndexes() {
+        List<Long> indexes = new ArrayList<Long>(offsets.keySet());
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    /*
+     * @return - the number of completed runs
+     */
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    /*
+     * Records a completed run
+     * @param index - the combination index
+     * @param row - the printed answers, by question text
+     * @param result - the result of the run as a String
+     */
+    public synchronized void record(long index, Map<String, String> row, String result) throws IOException {
+        appendRun(index, row, result, null);
+    }
+
+    /*
+     * Reads back the printed answers of a completed run
+     * @param index - the combination index
+     * @return - the printed answers, by question text
+     */
+    public synchronized Map<String, String> getRow(long index) throws IOException {
+        return readRun(offset(index)).getRow();
+    }
+
+    /*
+     * Reads back the result of a completed run
+     * @param index - the combination index
+     * @return - the result of the run as a String
+     */
+    public synchronized String getResult(long index) throws IOException {
+        return readRun(offset(index)).getResult();
+    }
+
+    protected void indexRun(long offset, long index, int result, int[] cells) {
+        offsets.put(index, offset);
+    }
+
+    /*
+     * @return - the position of the given run's record
+     */
+    private long offset(long index) {
+        Long offset = offsets.get(index);
+        if (offset == null) {
+            throw new IllegalArgumentException("Run " + index + " is not in the checkpoint");
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,186 @@
+package apptesting;
+
+import java.util.*;
+
+/*
+ * The CombinationEnumerator class maps each run of the app to a mixed-radix index built from the number
+ * of options of each question on "test" mode, with the last question varying fastest (the same order the
+ * runs used to be produced in recursively). Combinations can be looked up by index, iterated lazily, and
+ * sliced by index range, so large matrices can be split, resumed or sampled without shared state.
+ */
+public class CombinationEnumerator implements Combinations {
+    private int[] radices;
+    private long total;
+    private long start;
+    private long end;
+
+    /*
+     * Constructs a new CombinationEnumerator over every combination of options of the given questions
+     * @param questions - the questions on "test" mode in order
+     */
+    public CombinationEnumerator(List<Question> questions) {
+        this(radices(questions));
+    }
+
+    /*
+     * Constructs a new CombinationEnumerator over every combination of the given radices
+     * @param radices - the number of options of each question (values below 1 are treated as 1)
+     */
+    public CombinationEnumerator(int[] radices) {
+        this.radices = new int[radices.length];
+        total = 1;
+        for (int i = 0; i < radices.length; i++) {
+            this.radices[i] = Math.max(1, radices[i]);
+            try {
+                total = Math.multiplyExact(total, this.radices[i]);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Combination space is larger than Long.MAX_VALUE");
+            }
+        }
+        start = 0;
+        end = total;
+    }
+
+    /*
+     * Constructs a slice of the given enumerator
+     */
+    private CombinationEnumerator(CombinationEnumerator parent, long start, long end) {
+        radices = parent.radices;
+        total = parent.total;
+        this.start = start;
+        this.end = end;
+    }
+
+    /*
+     * @return - the number of combinations in this enumerator
+     */
+    public long size() {
+        return end - start;
+    }
+
+    /*
+     * @return - the number of combinations in the whole space, regardless of slicing
+     */
+    public long total() {
+        return total;
+    }
+
+    /*
+     * @return - the index of the first combination in this enumerator
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /*
+     * @return - the index after the last combination in this enumerator
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /*
+     * @return - a copy of the number of options of each question
+     */
+    public int[] getRadices() {
+        return radices.clone();
+    }
+
+    /*
+     * Returns the combination at the given index of this enumerator (relative to getStart() when sliced)
+     * @param index - the combination index, between 0 and size() - 1
+     * @return - the option index of each question
+     */
+    public int[] combinationAt(long index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Combination " + index + " of " + size());
+        }
+        return decode(start + index);
+    }
+
+    /*
+     * Returns the index of the given combination in the whole space, regardless of slicing
+     * @param options - the option index of each question
+     * @return - the combination index
+     */
+    public long indexOf(int[] options) {
+        if (options.length != radices.length) {
+            throw new IllegalArgumentException("Expected " + radices.length + " options, got " + options.length);
+        }
+        long index = 0;
+        for (int i = 0; i < radices.length; i++) {
+            if (options[i] < 0 || options[i] >= radices[i]) {
+                throw new IllegalArgumentException("Option " + options[i] + " out of range for question " + i);
+            }
+            index = index * radices[i] + options[i];
+        }
+        return index;
+    }
+
+    /*
+     * Returns the combinations from index from (inclusive) to index to (exclusive) of the whole space.
+     * Indices of the returned enumerator start again from 0.
+     * @param from - the first combination index
+     * @param to - the index after the last combination
+     * @return - a new CombinationEnumerator over the given range
+     */
+    public CombinationEnumerator slice(long from, long to) {
+        if (from < 0 || to > total || from > to) {
+            throw new IndexOutOfBoundsException("Slice [" + from + ", " + to + ") of " + total);
+        }
+        return new CombinationEnumerator(this, from, to);
+    }
+
+    /*
+     * Iterates over the combinations in index order. Each call to next() returns a new array, and the
+     * iterator steps like an odometer instead of dividing the index for every combination.
+     */
+    public Iterator<int[]> iterator() {
+        return new Iterator<int[]>() {
+            private long index = start;
+            private int[] options = index < end ? decode(index) : null;
+
+            public boolean hasNext() {
+                return index < end;
+            }
+
+            public int[] next() {
+                if (index >= end) {
+                    throw new NoSuchElementException();
+                }
+                int[] current = options.clone();
+                index++;
+                for (int i = options.length - 1; i >= 0; i--) {
+                    if (++options[i] < radices[i]) {
+                        break;
+                    }
+                    options[i] = 0;
+                }
+                return current;
+            }
+        };
+    }
+
+    /*
+     * Decodes an index of the whole space into the option index of each question
+     */
+    private int[] decode(long index) {
+        int[] options = new int[radices.length];
+        for (int i = radices.length - 1; i >= 0; i--) {
+            options[i] = (int) (index % radices[i]);
+            index /= radices[i];
+        }
+        return options;
+    }
+
+    /*
+     * @return - the number of options of each question
+     */
+    private static int[] radices(List<Question> questions) {
+        int[] radices = new int[questions.size()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = questions.get(i).getNumOptions();
+        }
+        return radices;
+    }
+}
@@ -0,0 +1,20 @@
+package apptesting;
+
+/*
+ * The Combinations interface represents an ordered set of runs, each run being the option index of every
+ * question on "test" mode. Runs are numbered from 0 so they can be split across sessions and matched
+ * to rows of the output sheet.
+ */
+public interface Combinations extends Iterable<int[]> {
+    /*
+     * @return - the number of runs
+     */
+    long size();
+
+    /*
+     * Returns the run at the given index
+     * @param index - the run index, between 0 and size() - 1
+     * @return - the option index of each question
+     */
+    int[] combinationAt(long index);
+}
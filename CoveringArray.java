@@ -0,0 +1,301 @@
+package apptesting;
+
+import java.util.*;
+
+/*
+ * The CoveringArray class generates a t-way covering array over the options of the questions on "test" mode:
+ * a set of runs in which every combination of options of any t questions appears at least once. Pairwise
+ * (t = 2) covers every pair of options in far fewer runs than the full product. Questions marked as
+ * exhaustive are left out of the array and crossed with every row of it instead.
+ * The array is built with the In-Parameter-Order (IPOG) strategy: start from the full product of the first
+ * t questions, then add one question at a time, extending existing runs horizontally and adding new runs
+ * vertically for any t-way combinations still uncovered.
+ */
+public class CoveringArray implements Combinations {
+    private List<int[]> rows = new ArrayList<int[]>();
+
+    /*
+     * Constructs a new t-way CoveringArray over the given questions
+     * @param questions - the questions on "test" mode in order
+     * @param strength - the number of questions t whose options must be covered together
+     * @param exhaustive - whether each question must be tested with every combination of the others
+     */
+    public CoveringArray(List<Question> questions, int strength, boolean[] exhaustive) {
+        this(radices(questions), strength, exhaustive);
+    }
+
+    /*
+     * Constructs a new t-way CoveringArray over the given radices
+     * @param radices - the number of options of each question (values below 1 are treated as 1)
+     * @param strength - the number of questions t whose options must be covered together
+     * @param exhaustive - whether each question must be tested with every combination of the others
+     */
+    public CoveringArray(int[] radices, int strength, boolean[] exhaustive) {
+        if (strength < 1) {
+            throw new IllegalArgumentException("Strength must be at least 1, got " + strength);
+        }
+
+        //Split questions into those covered by the array and those crossed with it
+        List<Integer> covered = new ArrayList<Integer>();
+        List<Integer> crossed = new ArrayList<Integer>();
+        for (int i = 0; i < radices.length; i++) {
+            if (exhaustive != null && exhaustive[i]) {
+                crossed.add(i);
+            } else {
+                covered.add(i);
+            }
+        }
+
+        //Larger domains first gives smaller arrays
+        Collections.sort(covered, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(Math.max(1, radices[b]), Math.max(1, radices[a]));
+            }
+        });
+        int[] coveredRadices = new int[covered.size()];
+        for (int i = 0; i < coveredRadices.length; i++) {
+            coveredRadices[i] = Math.max(1, radices[covered.get(i)]);
+        }
+        int[] crossedRadices = new int[crossed.size()];
+        for (int i = 0; i < crossedRadices.length; i++) {
+            crossedRadices[i] = radices[crossed.get(i)];
+        }
+
+        List<int[]> array = ipog(coveredRadices, strength);
+        for (int[] partial : array) {
+            for (int[] cross : new CombinationEnumerator(crossedRadices)) {
+                int[] row = new int[radices.length];
+                for (int i = 0; i < partial.length; i++) {
+                    row[covered.get(i)] = partial[i];
+                }
+                for (int i = 0; i < cross.length; i++) {
+                    row[crossed.get(i)] = cross[i];
+                }
+                rows.add(row);
+            }
+        }
+    }
+
+    /*
+     * @return - the number of runs
+     */
+    public long size() {
+        return rows.size();
+    }
+
+    /*
+     * Returns the run at the given index
+     * @param index - the run index, between 0 and size() - 1
+     * @return - a copy of the option index of each question
+     */
+    public int[] combinationAt(long index) {
+        if (index < 0 || index >= rows.size()) {
+            throw new IndexOutOfBoundsException("Combination " + index + " of " + rows.size());
+        }
+        return rows.get((int) index).clone();
+    }
+
+    /*
+     * Iterates over the runs in order
+     */
+    public Iterator<int[]> iterator() {
+        return new Iterator<int[]>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return index < rows.size();
+            }
+
+            public int[] next() {
+                return combinationAt(index++);
+            }
+        };
+    }
+
+    /*
+     * Builds a t-way covering array over the given radices using IPOG. Don't-care cells are marked -1
+     * while the array is built and set to 0 at the end.
+     * @param radices - the number of options of each question, all at least 1
+     * @param t - the strength
+     * @return - the rows of the covering array
+     */
+    private static List<int[]> ipog(int[] radices, int t) {
+        int n = radices.length;
+        List<int[]> array = new ArrayList<int[]>();
+
+        //Full product of the first t questions (or all of them if there are fewer)
+        int[] first = Arrays.copyOf(radices, Math.min(t, n));
+        for (int[] prefix : new CombinationEnumerator(first)) {
+            int[] row = new int[n];
+            Arrays.fill(row, -1);
+            System.arraycopy(prefix, 0, row, 0, prefix.length);
+            array.add(row);
+        }
+
+        for (int p = t; p < n; p++) {
+            //Uncovered t-way combinations involving question p: one bitmap per choice of t - 1 earlier questions
+            List<int[]> columnSets = choose(p, t - 1);
+            boolean[][] uncovered = new boolean[columnSets.size()][];
+            int remaining = 0;
+            for (int c = 0; c < uncovered.length; c++) {
+                int size = radices[p];
+                for (int column : columnSets.get(c)) {
+                    size *= radices[column];
+                }
+                uncovered[c] = new boolean[size];
+                Arrays.fill(uncovered[c], true);
+                remaining += size;
+            }
+
+            //Horizontal growth: pick the value of question p covering the most combinations in each row
+            for (int[] row : array) {
+                int best = 0;
+                int bestCount = -1;
+                for (int v = 0; v < radices[p]; v++) {
+                    row[p] = v;
+                    int count = 0;
+                    for (int c = 0; c < uncovered.length; c++) {
+                        int index = encode(row, columnSets.get(c), p, radices);
+                        if (index >= 0 && uncovered[c][index]) {
+                            count++;
+                        }
+                    }
+                    if (count > bestCount) {
+                        best = v;
+                        bestCount = count;
+                    }
+                }
+                row[p] = best;
+                for (int c = 0; c < uncovered.length; c++) {
+                    int index = encode(row, columnSets.get(c), p, radices);
+                    if (index >= 0 && uncovered[c][index]) {
+                        uncovered[c][index] = false;
+                        remaining--;
+                    }
+                }
+            }
+
+            //Vertical growth: fit each remaining combination into a row with matching or don't-care cells
+            if (remaining > 0) {
+                List<int[]> added = new ArrayList<int[]>();
+                for (int c = 0; c < uncovered.length; c++) {
+                    int[] columns = columnSets.get(c);
+                    for (int index = 0; index < uncovered[c].length; index++) {
+                        if (!uncovered[c][index]) {
+                            continue;
+                        }
+                        int[] values = decode(index, columns, p, radices);
+                        int[] target = null;
+                        for (int[] row : array) {
+                            if (fits(row, columns, p, values)) {
+                                target = row;
+                                break;
+                            }
+                        }
+                        for (int r = 0; target == null && r < added.size(); r++) {
+                            if (fits(added.get(r), columns, p, values)) {
+                                target = added.get(r);
+                            }
+                        }
+                        if (target == null) {
+                            target = new int[n];
+                            Arrays.fill(target, -1);
+                            added.add(target);
+                        }
+                        for (int k = 0; k < columns.length; k++) {
+                            target[columns[k]] = values[k];
+                        }
+                        target[p] = values[columns.length];
+                    }
+                }
+                array.addAll(added);
+            }
+        }
+
+        for (int[] row : array) {
+            for (int i = 0; i < n; i++) {
+                if (row[i] < 0) {
+                    row[i] = 0;
+                }
+            }
+        }
+        return array;
+    }
+
+    /*
+     * Encodes the values of the given columns and of question p in a row, or returns -1 if any is a don't-care
+     */
+    private static int encode(int[] row, int[] columns, int p, int[] radices) {
+        int index = 0;
+        for (int column : columns) {
+            if (row[column] < 0) {
+                return -1;
+            }
+            index = index * radices[column] + row[column];
+        }
+        return index * radices[p] + row[p];
+    }
+
+    /*
+     * Decodes an index from encode() into the values of the given columns followed by the value of question p
+     */
+    private static int[] decode(int index, int[] columns, int p, int[] radices) {
+        int[] values = new int[columns.length + 1];
+        values[columns.length] = index % radices[p];
+        index /= radices[p];
+        for (int k = columns.length - 1; k >= 0; k--) {
+            values[k] = index % radices[columns[k]];
+            index /= radices[columns[k]];
+        }
+        return values;
+    }
+
+    /*
+     * @return - true if the row's cells in the given columns and question p are don't-cares or equal to values
+     */
+    private static boolean fits(int[] row, int[] columns, int p, int[] values) {
+        for (int k = 0; k < columns.length; k++) {
+            if (row[columns[k]] >= 0 && row[columns[k]] != values[k]) {
+                return false;
+            }
+        }
+        return row[p] < 0 || row[p] == values[columns.length];
+    }
+
+    /*
+     * @return - every set of k column indices below n, in lexicographic order
+     */
+    private static List<int[]> choose(int n, int k) {
+        List<int[]> sets = new ArrayList<int[]>();
+        int[] set = new int[k];
+        for (int i = 0; i < k; i++) {
+            set[i] = i;
+        }
+        while (k <= n) {
+            sets.add(set.clone());
+            int i = k - 1;
+            while (i >= 0 && set[i] == n - k + i) {
+                i--;
+            }
+            if (i < 0) {
+                break;
+            }
+            set[i]++;
+            for (int j = i + 1; j < k; j++) {
+                set[j] = set[j - 1] + 1;
+            }
+        }
+        return sets;
+    }
+
+    /*
+     * @return - the number of options of each question
+     */
+    private static int[] radices(List<Question> questions) {
+        int[] radices = new int[questions.size()];
+        for (int i = 0; i < radices.length; i++) {
+            radices[i] = questions.get(i).getNumOptions();
+        }
+        return radices;
+    }
+}
@@ -0,0 +1,14 @@
+package apptesting;
+
+import org.openqa.selenium.WebDriver;
+
+/*
+ * The DriverFactory interface creates new browser sessions. Implementations should return a WebDriver
+ * that is logged in and sitting on the AfterPattern project page, ready for SampleApp.runApp().
+ */
+public interface DriverFactory {
+    /*
+     * @return - a new logged in WebDriver on the project page
+     */
+    WebDriver create();
+}
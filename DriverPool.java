@@ -0,0 +1,249 @@
+package apptesting;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/*
+ * The DriverPool class starts browser sessions ahead of time, in parallel, so they are ready by the time a
+ * sweep needs them. Only one browser logs in: the others are given its session cookies, which are kept in
+ * memory. If a cookie file is given, the cookies are also saved to it as plain text lines of name, value,
+ * domain, path and expiry, in a file only the owner can read, so later processes, such as other shards, skip
+ * logging in while the session is valid.
+ * Every browser is left on the project page. The pool is a DriverFactory, so it can be given to ParallelRunner.
+ */
+public class DriverPool implements DriverFactory, Closeable {
+    private DriverFactory browsers;
+    private Authenticator authenticator;
+    private String projectUrl;
+    private String cookiePath;
+    private ExecutorService starter;
+    private LinkedBlockingQueue<Future<WebDriver>> ready = new LinkedBlockingQueue<Future<WebDriver>>();
+    private Set<Cookie> cookies;
+
+    /*
+     * Constructs a new DriverPool and starts its browsers
+     * @param browsers - the DriverFactory creating browsers that are not logged in yet
+     * @param authenticator - the Authenticator logging a browser in
+     * @param projectUrl - the URL of the AfterPattern project page as a String
+     * @param cookiePath - the path of the file to save session cookies to, or "" to not save them
+     * @param size - the number of browsers to start ahead of time
+     */
+    public DriverPool(DriverFactory browsers, Authenticator authenticator, String projectUrl, String cookiePath, int size) {
+        this.browsers = browsers;
+        this.authenticator = authenticator;
+        this.projectUrl = projectUrl;
+        this.cookiePath = cookiePath;
+        starter = Executors.newFixedThreadPool(Math.max(1, size));
+        for (int i = 0; i < size; i++) {
+            ready.add(starter.submit(new Callable<WebDriver>() {
+                public WebDriver call() {
+                    return start();
+                }
+            }));
+        }
+    }
+
+    /*
+     * Takes a started browser from the pool, or starts one if every started browser was taken
+     * @return - a logged in WebDriver on the project page
+     */
+    public WebDriver create() {
+        Future<WebDriver> next = ready.poll();
+        if (next == null) {
+            return start();
+        }
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting a browser", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Browser failed to start", e.getCause());
+        }
+    }
+
+    /*
+     * Starts a browser and logs it in, with the shared cookies if there are any
+     */
+    private WebDriver start() {
+        WebDriver driver = browsers.create();
+        try {
+            if (!signIn(driver)) {
+                addCookies(driver, cookies);
+                driver.get(projectUrl);
+            }
+            return driver;
+        } catch (RuntimeException e) {
+            driver.quit();
+            throw e;
+        }
+    }
+
+    /*
+     * Makes sure there are valid shared cookies, loading them from the cookie file or logging in the given
+     * browser to get them. Browsers wait here until the first one is logged in.
+     * @return - true if the given browser was logged in while getting the cookies
+     */
+    private synchronized boolean signIn(WebDriver driver) {
+        if (cookies != null) {
+            return false;
+        }
+
+        Set<Cookie> saved = load();
+        if (saved != null) {
+            addCookies(driver, saved);
+            driver.get(projectUrl);
+            if (authenticator.isLoggedIn(driver)) {
+                cookies = saved;
+                return true;
+            }
+            driver.manage().deleteAllCookies();
+        }
+
+        authenticator.login(driver);
+        cookies = new HashSet<Cookie>(driver.manage().getCookies());
+        save(cookies);
+        return true;
+    }
+
+    /*
+     * Adds cookies to a browser, which must first be on a page of the cookies' site
+     */
+    private void addCookies(WebDriver driver, Set<Cookie> add) {
+        driver.get(projectUrl);
+        for (Cookie cookie : add) {
+            try {
+                driver.manage().addCookie(cookie);
+            } catch (WebDriverException e) {
+                //Cookies of another domain, such as a login subdomain, cannot be set from this page
+            }
+        }
+    }
+
+    /*
+     * @return - the unexpired cookies saved by an earlier process, or null if there are none or the file
+     * cannot be read
+     */
+    private Set<Cookie> load() {
+        File file = new File(cookiePath);
+        if (cookiePath.isEmpty() || !file.exists()) {
+            return null;
+        }
+        Set<Cookie> saved = new HashSet<Cookie>();
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 7) {
+                    return null;
+                }
+                Date expiry = fields[4].isEmpty() ? null : new Date(Long.parseLong(fields[4]));
+                if (expiry == null || expiry.after(new Date())) {
+                    String domain = fields[2].isEmpty() ? null : decode(fields[2]);
+                    saved.add(new Cookie(decode(fields[0]), decode(fields[1]), domain, decode(fields[3]), expiry,
+                            Boolean.parseBoolean(fields[5]), Boolean.parseBoolean(fields[6])));
+                }
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return saved.isEmpty() ? null : saved;
+    }
+
+    /*
+     * Saves the cookies for later processes, one per line, replacing the file in one step so readers never
+     * see half of it
+     */
+    private void save(Set<Cookie> save) {
+        if (cookiePath.isEmpty()) {
+            return;
+        }
+        try {
+            File file = new File(cookiePath);
+            File temp = new File(file.getPath() + ".tmp");
+            createPrivate(temp.toPath());
+            Writer out = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8);
+            try {
+                for (Cookie cookie : save) {
+                    out.write(encode(cookie.getName()) + "\t" + encode(cookie.getValue()) + "\t"
+                            + encode(cookie.getDomain()) + "\t" + encode(cookie.getPath()) + "\t"
+                            + (cookie.getExpiry() == null ? "" : String.valueOf(cookie.getExpiry().getTime())) + "\t"
+                            + cookie.isSecure() + "\t" + cookie.isHttpOnly() + "\n");
+                }
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Could not replace " + file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Creates an empty file that only the owner can read or write, replacing any file already there
+     */
+    private static void createPrivate(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            //Not a POSIX file system, so the permissions are set after creating the file
+            File file = Files.createFile(path).toFile();
+            if (!(file.setReadable(false, false) && file.setReadable(true, true)
+                    && file.setWritable(false, false) && file.setWritable(true, true))) {
+                Files.delete(path);
+                throw new IOException("Could not make " + path + " private");
+            }
+        }
+    }
+
+    /*
+     * @return - a cookie field with tabs, line breaks and other special characters escaped, or "" for null
+     */
+    private static String encode(String field) throws UnsupportedEncodingException {
+        return field == null ? "" : URLEncoder.encode(field, "UTF-8");
+    }
+
+    /*
+     * @return - a cookie field read back from the file
+     */
+    private static String decode(String field) throws UnsupportedEncodingException {
+        return URLDecoder.decode(field, "UTF-8");
+    }
+
+    /*
+     * Quits the started browsers that were never taken
+     */
+    public void close() {
+        starter.shutdown();
+        Future<WebDriver> next;
+        while ((next = ready.poll()) != null) {
+            try {
+                next.get().quit();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //Nothing to quit
+            }
+        }
+    }
+}
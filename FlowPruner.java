@@ -0,0 +1,175 @@
+package apptesting;
+
+import java.util.*;
+
+/*
+ * The FlowPruner class skips runs whose answers would not change the path through the app. Each executed run
+ * is fingerprinted by the sequence of question labels it saw and the URL it ended on. When every option of a
+ * question on "test" mode has given the same fingerprint and result as option 0 with all other answers the
+ * same, the question is treated as flow-neutral: from then on a run is only executed if the run with each
+ * neutral question set back to option 0 has not been, otherwise its row and result are inferred from that run.
+ * Neutrality is learned from the first runs that vary each question, so it assumes a question that does not
+ * change the flow in those runs does not change it elsewhere.
+ */
+public class FlowPruner {
+    public static final String INFERRED = " (inferred)";
+
+    private List<String> texts = new ArrayList<String>();
+    private int[] radices;
+    private boolean[][] equivalent;
+    private boolean[] flow;
+    private boolean[] neutral;
+    private ArrayList<HashMap<Integer, String>> optionTexts = new ArrayList<HashMap<Integer, String>>();
+    private HashMap<String, Run> executed = new HashMap<String, Run>();
+
+    /*
+     * Constructs a new FlowPruner over the given questions
+     * @param testQuestions - the questions on "test" mode in combination order
+     */
+    public FlowPruner(List<Question> testQuestions) {
+        radices = new int[testQuestions.size()];
+        equivalent = new boolean[radices.length][];
+        flow = new boolean[radices.length];
+        neutral = new boolean[radices.length];
+        for (int q = 0; q < radices.length; q++) {
+            texts.add(testQuestions.get(q).getText());
+            radices[q] = Math.max(1, testQuestions.get(q).getNumOptions());
+            equivalent[q] = new boolean[radices[q]];
+            equivalent[q][0] = true;
+            optionTexts.add(new HashMap<Integer, String>());
+        }
+    }
+
+    /*
+     * Learns from a run that was executed
+     * @param options - the option index of each question on "test" mode
+     * @param fingerprint - the labels the run saw and the URL it ended on as a String, or null if the run did
+     * not finish
+     * @param result - the result of the run as a String
+     * @param row - the printed answers of the run, by question text
+     */
+    public synchronized void learn(int[] options, String fingerprint, String result, Map<String, String> row) {
+        //A run that timed out or lost its browser has no flow to compare
+        if (fingerprint == null) {
+            return;
+        }
+        Run run = new Run(new LinkedHashMap<String, String>(row), result, hash(fingerprint));
+        executed.put(Arrays.toString(options), run);
+        for (int q = 0; q < radices.length; q++) {
+            if (row.containsKey(texts.get(q))) {
+                optionTexts.get(q).put(options[q], row.get(texts.get(q)));
+            }
+        }
+
+        //Compare with the executed run differing only in one question being on option 0
+        for (int q = 0; q < radices.length; q++) {
+            if (options[q] == 0 || flow[q] || neutral[q]) {
+                continue;
+            }
+            int[] base = options.clone();
+            base[q] = 0;
+            Run other = executed.get(Arrays.toString(base));
+            if (other == null) {
+                continue;
+            }
+            if (other.fingerprint != run.fingerprint || !other.result.equals(result)) {
+                flow[q] = true;
+                continue;
+            }
+            equivalent[q][options[q]] = true;
+            boolean all = true;
+            for (int o = 0; o < radices[q]; o++) {
+                all &= equivalent[q][o] && optionTexts.get(q).containsKey(o);
+            }
+            neutral[q] = all;
+        }
+    }
+
+    /*
+     * Infers a run from an executed run that only differs in flow-neutral questions
+     * @param options - the option index of each question on "test" mode
+     * @return - the inferred run, or null if it has to be executed
+     */
+    public synchronized Run infer(int[] options) {
+        int[] canonical = options.clone();
+        boolean changed = false;
+        for (int q = 0; q < radices.length; q++) {
+            if (neutral[q] && canonical[q] != 0) {
+                canonical[q] = 0;
+                changed = true;
+            }
+        }
+        Run base = changed ? executed.get(Arrays.toString(canonical)) : null;
+        if (base == null) {
+            return null;
+        }
+
+        LinkedHashMap<String, String> row = new LinkedHashMap<String, String>(base.row);
+        for (int q = 0; q < radices.length; q++) {
+            if (row.containsKey(texts.get(q))) {
+                row.put(texts.get(q), optionTexts.get(q).get(options[q]));
+            }
+        }
+        return new Run(row, base.result + INFERRED, base.fingerprint);
+    }
+
+    /*
+     * @return - the text of each question on "test" mode found to be flow-neutral so far
+     */
+    public synchronized List<String> getNeutralQuestions() {
+        List<String> found = new ArrayList<String>();
+        for (int q = 0; q < radices.length; q++) {
+            if (neutral[q]) {
+                found.add(texts.get(q));
+            }
+        }
+        return found;
+    }
+
+    /*
+     * 64-bit FNV-1a hash, so only a long is kept per executed run
+     */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /*
+     * The Run class is the printed answers and result of an executed or inferred run
+     */
+    public static class Run {
+        private Map<String, String> row;
+        private String result;
+        private long fingerprint;
+
+        /*
+         * Constructs a new Run
+         * @param row - the printed answers, by question text
+         * @param result - the result as a String
+         * @param fingerprint - the hash of the labels seen and the final URL
+         */
+        private Run(Map<String, String> row, String result, long fingerprint) {
+            this.row = row;
+            this.result = result;
+            this.fingerprint = fingerprint;
+        }
+
+        /*
+         * @return - the printed answers, by question text
+         */
+        public Map<String, String> getRow() {
+            return row;
+        }
+
+        /*
+         * @return - the result as a String
+         */
+        public String getResult() {
+            return result;
+        }
+    }
+}
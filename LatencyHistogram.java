@@ -0,0 +1,111 @@
+package apptesting;
+
+/*
+ * The LatencyHistogram class counts latencies in logarithmic buckets, each power of two being split into 32
+ * linear sub-buckets, so percentiles are accurate to about 3% while recording stays a few array operations
+ * and the memory used is fixed however many values are recorded. Values are in microseconds.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+
+    private long[] counts = new long[SUB_BUCKETS * 60];
+    private long count = 0;
+    private long total = 0;
+    private long max = 0;
+
+    /*
+     * Records a latency
+     * @param micros - the latency in microseconds
+     */
+    public synchronized void record(long micros) {
+        micros = Math.max(0, micros);
+        counts[index(micros)]++;
+        count++;
+        total += micros;
+        max = Math.max(max, micros);
+    }
+
+    /*
+     * Adds every latency recorded by another histogram to this one
+     * @param other - the LatencyHistogram to add
+     */
+    public void add(LatencyHistogram other) {
+        long[] otherCounts;
+        long otherCount, otherTotal, otherMax;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherCount = other.count;
+            otherTotal = other.total;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+            count += otherCount;
+            total += otherTotal;
+            max = Math.max(max, otherMax);
+        }
+    }
+
+    /*
+     * @return - the number of latencies recorded
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /*
+     * @return - the mean latency in microseconds, or 0 if none were recorded
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    /*
+     * @return - the largest latency in microseconds
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /*
+     * @param percentile - the percentile between 0 and 100
+     * @return - the upper bound of the bucket holding the given percentile in microseconds, or 0 if none were recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        long target = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, target) && counts[i] > 0) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * @return - the bucket of a value: values below 64 have their own bucket, larger values share a bucket
+     * with the values having the same top 6 bits
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS * 2) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    /*
+     * @return - the largest value counted in the given bucket
+     */
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS * 2) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index - SUB_BUCKETS * shift;
+        return ((sub + 1) << shift) - 1;
+    }
+}
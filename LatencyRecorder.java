@@ -0,0 +1,218 @@
+package apptesting;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.ss.usermodel.Row;
+
+/*
+ * The LatencyRecorder class times the phases of each run of an AfterPattern app: clicking the app link,
+ * switching to its tab, waiting for the first page, reading pages, answering questions, applying batched
+ * answers, continuing to the next page, checking the result and closing the tab. Each phase has a
+ * LatencyHistogram, and answering is also timed per question, so a report shows which pages and controls
+ * dominate a sweep. The phase times of the current run are also kept so they can be printed with its row.
+ */
+public class LatencyRecorder {
+    /*
+     * Phases of a run, in the order their times are returned by endRun()
+     */
+    public static final int LINK = 0;
+    public static final int TAB = 1;
+    public static final int LOAD = 2;
+    public static final int READ = 3;
+    public static final int ANSWER = 4;
+    public static final int APPLY = 5;
+    public static final int CONTINUE = 6;
+    public static final int CHECK = 7;
+    public static final int CLOSE = 8;
+    public static final String[] PHASES = {"link", "tab", "load", "read", "answer", "apply", "continue", "check", "close"};
+
+    private LinkedHashMap<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+    private long[] run = new long[PHASES.length];
+    private long runStart = -1;
+
+    /*
+     * Constructs a new LatencyRecorder with an empty histogram for each phase and for whole runs
+     */
+    public LatencyRecorder() {
+        for (String phase : PHASES) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        histograms.put("run", new LatencyHistogram());
+    }
+
+    /*
+     * Starts timing a phase, and the run if it is the first phase since the last run ended
+     * @return - the start time to pass to stop()
+     */
+    public long start() {
+        long now = System.nanoTime();
+        if (runStart < 0) {
+            runStart = now;
+        }
+        return now;
+    }
+
+    /*
+     * Stops timing a phase
+     * @param phase - the phase, one of the constants of this class
+     * @param start - the time returned by start()
+     */
+    public void stop(int phase, long start) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        run[phase] += micros;
+        histograms.get(PHASES[phase]).record(micros);
+    }
+
+    /*
+     * Stops timing a phase that is also timed separately for the given question
+     * @param phase - the phase, one of the constants of this class
+     * @param text - the question text as a String
+     * @param start - the time returned by start()
+     */
+    public void stop(int phase, String text, long start) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        run[phase] += micros;
+        histograms.get(PHASES[phase]).record(micros);
+        histogram(PHASES[phase] + ": " + text).record(micros);
+    }
+
+    /*
+     * Ends the current run. The tab of a run is closed after its result is printed, so closing is counted
+     * in the run after it.
+     * @return - the microseconds spent in each phase during the run, followed by the run's total
+     */
+    public long[] endRun() {
+        long[] times = Arrays.copyOf(run, PHASES.length + 1);
+        times[PHASES.length] = runStart < 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - runStart);
+        histograms.get("run").record(times[PHASES.length]);
+        Arrays.fill(run, 0);
+        runStart = -1;
+        return times;
+    }
+
+    /*
+     * Forgets the phases timed since the last run ended, for a run that was abandoned
+     */
+    public void cancelRun() {
+        Arrays.fill(run, 0);
+        runStart = -1;
+    }
+
+    /*
+     * @return - the names of the columns printed for the times returned by endRun()
+     */
+    public static String[] getColumnNames() {
+        String[] names = new String[PHASES.length + 1];
+        for (int i = 0; i < PHASES.length; i++) {
+            names[i] = "Time " + PHASES[i] + " (ms)";
+        }
+        names[PHASES.length] = "Time run (ms)";
+        return names;
+    }
+
+    /*
+     * Prints the phase times of a run in milliseconds, under the columns named by getColumnNames()
+     * @param row - the run's Row
+     * @param column - the column index of the first phase
+     * @param times - the phase times in microseconds as returned by endRun()
+     */
+    public static void printTimings(Row row, int column, long[] times) {
+        for (int i = 0; i < times.length; i++) {
+            row.createCell(column + i).setCellValue(times[i] / 1000.0);
+        }
+    }
+
+    /*
+     * Adds every latency recorded by another recorder to this one, such as one per parallel session
+     * @param other - the LatencyRecorder to add
+     */
+    public synchronized void add(LatencyRecorder other) {
+        synchronized (other) {
+            for (Map.Entry<String, LatencyHistogram> entry : other.histograms.entrySet()) {
+                histogram(entry.getKey()).add(entry.getValue());
+            }
+        }
+    }
+
+    /*
+     * @return - the histogram with the given name, created if it does not exist yet
+     */
+    private synchronized LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /*
+     * @return - the histogram of each phase, of whole runs and of answering each question, by name
+     */
+    public synchronized Map<String, LatencyHistogram> getHistograms() {
+        return new LinkedHashMap<String, LatencyHistogram>(histograms);
+    }
+
+    /*
+     * Writes the count, mean, p50, p95, p99 and max milliseconds of every histogram that recorded anything,
+     * as JSON if the path ends in .json and as CSV otherwise
+     * @param path - the path of the report file as a String
+     */
+    public void write(String path) throws IOException {
+        boolean json = path.toLowerCase().endsWith(".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8);
+        try {
+            writer.write(json ? "[\n" : "step,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms\n");
+            boolean first = true;
+            for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+                LatencyHistogram h = entry.getValue();
+                if (h.getCount() == 0) {
+                    continue;
+                }
+                String[] values = {String.valueOf(h.getCount()), millis(h.getMean()), millis(h.getPercentile(50)),
+                        millis(h.getPercentile(95)), millis(h.getPercentile(99)), millis(h.getMax())};
+                if (json) {
+                    writer.write((first ? "" : ",\n") + "  {\"step\": \"" + entry.getKey().replace("\\", "\\\\").replace("\"", "\\\"")
+                            + "\", \"count\": " + values[0] + ", \"mean_ms\": " + values[1] + ", \"p50_ms\": " + values[2]
+                            + ", \"p95_ms\": " + values[3] + ", \"p99_ms\": " + values[4] + ", \"max_ms\": " + values[5] + "}");
+                } else {
+                    writer.write("\"" + entry.getKey().replace("\"", "\"\"") + "\"," + String.join(",", values) + "\n");
+                }
+                first = false;
+            }
+            if (json) {
+                writer.write("\n]\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+     * @return - one line per phase and for whole runs with the count, p50, p95, p99 and max milliseconds
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            if (h.getCount() == 0 || entry.getKey().contains(": ")) {
+                continue;
+            }
+            report.append(entry.getKey()).append(": n=").append(h.getCount())
+                    .append(", p50=").append(millis(h.getPercentile(50))).append("ms")
+                    .append(", p95=").append(millis(h.getPercentile(95))).append("ms")
+                    .append(", p99=").append(millis(h.getPercentile(99))).append("ms")
+                    .append(", max=").append(millis(h.getMax())).append("ms\n");
+        }
+        return report.toString();
+    }
+
+    /*
+     * @return - the given microseconds as milliseconds with one decimal place
+     */
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.1f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,202 @@
+package apptesting;
+
+import java.util.*;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/*
+ * The PageSnapshot class reads every question on the current AfterPattern page in a single script call:
+ * the question text, the detected question type, the option texts and the option and input elements,
+ * along with the continue button. Questions work from the snapshot instead of looking up their elements
+ * one WebDriver command at a time. The handles stay valid until the page re-renders; SampleApp reads the
+ * page again when one goes stale.
+ */
+public class PageSnapshot {
+    private static final String SCRIPT =
+        "var labels = document.getElementsByClassName('page-block__field-label');"
+        + "var inputs = document.querySelectorAll(\"div[class='page-block__field-input']\");"
+        + "var fields = [];"
+        + "for (var i = 0; i < labels.length; i++) {"
+        + "  var label = labels[i];"
+        + "  var p = label.querySelector('p');"
+        + "  var type = 'text';"
+        + "  var fieldset = label.parentElement.querySelector('fieldset');"
+        + "  if (fieldset) {"
+        + "    var c = fieldset.className;"
+        + "    type = c.indexOf('radio') >= 0 ? 'radio' : c.indexOf('boolean') >= 0 ? 'boolean' : 'checkbox';"
+        + "  } else if (label.parentElement.querySelector('select')) {"
+        + "    type = 'dropdown';"
+        + "  }"
+        + "  var box = inputs[i];"
+        + "  var options = [];"
+        + "  var input = null;"
+        + "  if (box) {"
+        + "    if (type == 'boolean') { options = box.querySelectorAll('label'); }"
+        + "    else if (type == 'dropdown') { input = box.querySelector('select'); options = box.querySelectorAll('option'); }"
+        + "    else if (type == 'text') { input = box.querySelector('input'); }"
+        + "    else { options = box.querySelectorAll('p'); }"
+        + "  }"
+        + "  var elements = [];"
+        + "  var texts = [];"
+        + "  for (var j = 0; j < options.length; j++) {"
+        + "    elements.push(options[j]);"
+        + "    texts.push(options[j].innerText.trim());"
+        + "  }"
+        + "  fields.push({text: p ? p.innerText.trim() : '', type: type, options: elements, texts: texts, input: input});"
+        + "}"
+        + "return [fields, document.querySelector('.btn-primary')];";
+
+    private List<Field> fields;
+    private WebElement continueButton;
+
+    /*
+     * Constructs a new PageSnapshot from the given fields
+     * @param fields - the questions on the page in order
+     * @param continueButton - the continue button, or null if there is none
+     */
+    private PageSnapshot(List<Field> fields, WebElement continueButton) {
+        this.fields = fields;
+        this.continueButton = continueButton;
+    }
+
+    /*
+     * Reads every question on the current page in one script call
+     * @param driver - the Selenium WebDriver on the page
+     * @return - a new PageSnapshot of the page
+     */
+    @SuppressWarnings("unchecked")
+    public static PageSnapshot take(WebDriver driver) {
+        List<Object> result = (List<Object>) ((JavascriptExecutor) driver).executeScript(SCRIPT);
+        List<Field> fields = new ArrayList<Field>();
+        for (Object o : (List<Object>) result.get(0)) {
+            Map<String, Object> field = (Map<String, Object>) o;
+            List<WebElement> options = new ArrayList<WebElement>();
+            for (Object option : (List<Object>) field.get("options")) {
+                options.add((WebElement) option);
+            }
+            List<String> texts = new ArrayList<String>();
+            for (Object text : (List<Object>) field.get("texts")) {
+                texts.add((String) text);
+            }
+            fields.add(new Field(fields.size(), (String) field.get("text"), (String) field.get("type"),
+                    options, texts, (WebElement) field.get("input")));
+        }
+        return new PageSnapshot(fields, (WebElement) result.get(1));
+    }
+
+    /*
+     * @return - the number of questions on the page
+     */
+    public int size() {
+        return fields.size();
+    }
+
+    /*
+     * @param i - the question's position on the page (0 index)
+     * @return - the question at the given position
+     */
+    public Field getField(int i) {
+        return fields.get(i);
+    }
+
+    /*
+     * @param text - the question text as a String
+     * @return - true if a question with the given text is on the page
+     */
+    public boolean contains(String text) {
+        return getField(text) != null;
+    }
+
+    /*
+     * @param text - the question text as a String
+     * @return - the first question with the given text, or null if it is not on the page
+     */
+    public Field getField(String text) {
+        for (Field field : fields) {
+            if (field.getText().equals(text)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * @return - the continue button, or null if there is none
+     */
+    public WebElement getContinueButton() {
+        return continueButton;
+    }
+
+    /*
+     * The Field class holds what the snapshot read for one question on the page
+     */
+    public static class Field {
+        private int position;
+        private String text;
+        private String type;
+        private List<WebElement> options;
+        private List<String> optionTexts;
+        private WebElement input;
+
+        /*
+         * Constructs a new Field
+         * @param position - the question's position on the page (0 index)
+         * @param text - the question text as a String
+         * @param type - the detected question type (radio, boolean, checkbox, dropdown or text)
+         * @param options - the option elements (for dropdowns, including the placeholder option)
+         * @param optionTexts - the text of each option element
+         * @param input - the select or text input element, or null
+         */
+        public Field(int position, String text, String type, List<WebElement> options, List<String> optionTexts, WebElement input) {
+            this.position = position;
+            this.text = text;
+            this.type = type;
+            this.options = options;
+            this.optionTexts = optionTexts;
+            this.input = input;
+        }
+
+        /*
+         * @return - the question's position on the page (0 index)
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /*
+         * @return - question text
+         */
+        public String getText() {
+            return text;
+        }
+
+        /*
+         * @return - detected question type
+         */
+        public String getType() {
+            return type;
+        }
+
+        /*
+         * @return - option elements
+         */
+        public List<WebElement> getOptions() {
+            return options;
+        }
+
+        /*
+         * @return - option texts
+         */
+        public List<String> getOptionTexts() {
+            return optionTexts;
+        }
+
+        /*
+         * @return - select or text input element, or null
+         */
+        public WebElement getInput() {
+            return input;
+        }
+    }
+}
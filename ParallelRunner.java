@@ -0,0 +1,383 @@
+package apptesting;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openqa.selenium.WebDriver;
+
+/*
+ * The ParallelRunner class splits the runs of an AfterPattern app across a pool of independent browser
+ * sessions. Each session has its own WebDriver, SampleApp, questions and responses, and prints nothing itself.
+ * After every run the session sends the run to a single ResultWriter thread, which prints it
+ * into the shared output sheet at the row matching the run's combination index, so sessions never wait for
+ * each other to print and the output has the same layout as a sequential SampleApp.test().
+ */
+public class ParallelRunner {
+    private DriverFactory factory;
+    private String appName;
+    private int poolSize;
+    private int strength = 0;
+    private boolean batch = false;
+    private Checkpoint checkpoint;
+    private QuestionSchema schema;
+    private QuestionDefinitions definitions;
+    private XSSFSheet sheet;
+    private ResultWriter writer;
+    private RunLog runLog;
+    private int writerQueue = 1000;
+    private Combinations combinations;
+    private String[] results;
+    private long[][] runTimings;
+    private boolean timingColumns = false;
+    private LatencyRecorder timings = new LatencyRecorder();
+    private SweepMetrics metrics;
+    private Sampler sampler = new Sampler(System.nanoTime());
+    private String sampling = SampledCombinations.UNIFORM;
+    private long budget = 0;
+    private Shard shard;
+    private long firstRun = 0;
+    private boolean pruning = false;
+    private boolean reuseTab = false;
+    private Watchdog watchdog;
+    private ResultCheck resultCheck = new ResultCheck();
+    private FlowPruner pruner;
+    private AtomicInteger next = new AtomicInteger();
+
+    /*
+     * Constructs a new ParallelRunner with the given driver factory, app name and number of sessions
+     * @param factory - the DriverFactory used to create one WebDriver per session
+     * @param appName - the name of the AfterPattern app as a String
+     * @param poolSize - the number of browser sessions to run at once as an integer
+     */
+    public ParallelRunner(DriverFactory factory, String appName, int poolSize) {
+        this.factory = factory;
+        this.appName = appName;
+        this.poolSize = poolSize;
+    }
+
+    /*
+     * Sets the covering array strength used by every session (0 runs every combination)
+     * @param strength - the covering array strength as an integer
+     */
+    public void setStrength(int strength) {
+        this.strength = strength;
+    }
+
+    /*
+     * Sets whether every session applies the answers for a page in a single script call
+     * @param batch - whether to apply answers in batches
+     */
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    /*
+     * Sets the question schema every session loads from and records to
+     * @param schema - the QuestionSchema to use
+     */
+    public void setSchema(QuestionSchema schema) {
+        this.schema = schema;
+    }
+
+    /*
+     * Sets the checkpoint every session resumes from and records to
+     * @param checkpoint - the Checkpoint to use
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /*
+     * Sets whether the time spent in each phase of a run is printed in extra columns after the results
+     * @param timingColumns - whether to print phase times
+     */
+    public void setTimingColumns(boolean timingColumns) {
+        this.timingColumns = timingColumns;
+    }
+
+    /*
+     * @return - the latency histograms of every session, added up as each session finishes
+     */
+    public LatencyRecorder getTimings() {
+        return timings;
+    }
+
+    /*
+     * Sets the Sampler every session copies its own from, so all sessions sample the same runs and make the
+     * same random choices for the same run
+     * @param sampler - the Sampler to copy
+     */
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /*
+     * Sets the run budget and how runs are sampled, as in SampleApp.setSampling
+     * @param mode - "uniform" or "stratified"
+     * @param budget - the number of runs to make, or 0 for all of them
+     */
+    public void setSampling(String mode, long budget) {
+        this.sampling = mode;
+        this.budget = budget;
+    }
+
+    /*
+     * Sets the shard of the runs to make, as in SampleApp.setShard
+     * @param shard - the Shard to run, or null for every run
+     */
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    /*
+     * Sets flow-equivalence pruning, as in SampleApp.setPruning. Sessions share what they learn, but runs
+     * made out of order may be executed before the run they could have been inferred from.
+     * @param pruning - whether to prune flow-equivalent runs
+     */
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    /*
+     * Sets whether every session reuses one tab, going straight to the app URL at the start of each run
+     * @param reuseTab - whether to reuse one tab
+     */
+    public void setReuseTab(boolean reuseTab) {
+        this.reuseTab = reuseTab;
+    }
+
+    /*
+     * Sets the Watchdog supervising every session's runs, as in SampleApp.setWatchdog
+     * @param watchdog - the Watchdog to use, or null to run unsupervised
+     */
+    public void setWatchdog(Watchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /*
+     * Sets the run log every session appends its runs to, as in SampleApp.setRunLog. Runs are appended by
+     * the writer thread.
+     * @param runLog - the RunLog to use, or null for none
+     */
+    public void setRunLog(RunLog runLog) {
+        this.runLog = runLog;
+    }
+
+    /*
+     * Sets how many finished runs can wait for the writer thread before sessions have to wait for it
+     * @param capacity - the number of runs that can wait
+     */
+    public void setWriterQueue(int capacity) {
+        writerQueue = Math.max(1, capacity);
+    }
+
+    /*
+     * Sets the success and failure conditions every session checks, as in SampleApp.setResultCheck
+     * @param resultCheck - the ResultCheck to use
+     */
+    public void setResultCheck(ResultCheck resultCheck) {
+        this.resultCheck = resultCheck;
+    }
+
+    /*
+     * @return - the combination index of the run printed in the first row
+     */
+    public long getFirstRun() {
+        return firstRun;
+    }
+
+    /*
+     * Sets the metrics every session counts its runs in
+     * @param metrics - the SweepMetrics to use
+     */
+    public void setMetrics(SweepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /*
+     * Reads the "Questions" sheet and sets up the output sheet
+     * @param workbook - the XSSFWorkbook object to retrieve from and print to
+     * @param sheetName - the name of the Excel sheet to print to as a String
+     */
+    public void importFromExcel(XSSFWorkbook workbook, String sheetName) {
+        importQuestions(QuestionDefinitions.fromWorkbook(workbook), workbook.getSheet(sheetName));
+    }
+
+    /*
+     * Sets up the output sheet. Each session creates its own questions from the definitions.
+     * @param definitions - the QuestionDefinitions read from the "Questions" sheet or a text file
+     * @param outputSheet - the XSSFSheet object to print to
+     */
+    public void importQuestions(QuestionDefinitions definitions, XSSFSheet outputSheet) {
+        this.definitions = definitions;
+        sheet = outputSheet;
+        sheet.createRow(0);
+        writer = new ResultWriter(sheet);
+    }
+
+    /*
+     * Runs every combination of options for the questions on "test" mode across the session pool
+     * and prints the results to the output sheet
+     */
+    public void test() throws InterruptedException {
+        writer.setRunLog(runLog);
+        writer.start(writerQueue);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        List<Future<?>> sessions = new ArrayList<Future<?>>();
+        for (int i = 0; i < poolSize; i++) {
+            sessions.add(executor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        runSession();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+
+        try {
+            for (Future<?> session : sessions) {
+                session.get();
+            }
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new RuntimeException("Session failed", e.getCause());
+        } finally {
+            writer.close();
+        }
+        printResults();
+    }
+
+    /*
+     * Runs combinations on a single browser session until none are left
+     */
+    private void runSession() throws IOException {
+        WebDriver driver = factory.create();
+        SampleApp app = new SampleApp(driver, appName);
+        boolean started = false;
+        try {
+            //The first session to get here creates the shared results, combinations and pruner, and each session
+            //checks the checkpoint's plan before any run is recorded, so sessions set up one at a time
+            synchronized (this) {
+                app.useSchema(schema);
+                app.importQuestions(definitions);
+                app.setStrength(strength);
+                app.setBatch(batch);
+                app.setMetrics(metrics);
+                app.setSampler(sampler.copy());
+                app.setSampling(sampling, budget);
+                app.setReuseTab(reuseTab);
+                app.setWatchdog(watchdog);
+                app.setResultCheck(resultCheck);
+                if (checkpoint != null) {
+                    app.resume(checkpoint);
+                }
+                if (results == null) {
+                    combinations = app.getCombinations();
+                    long total = combinations.size();
+                    firstRun = shard == null ? 0 : shard.getStart(total);
+                    long runs = (shard == null ? total : shard.getEnd(total)) - firstRun;
+                    if (runs > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Cannot run " + runs + " combinations in one sheet; "
+                                + "set a budget or a shard");
+                    }
+                    results = new String[(int) runs];
+                    if (pruning) {
+                        pruner = new FlowPruner(app.getTestQuestions());
+                    }
+                    runTimings = new long[results.length][];
+                    if (metrics != null) {
+                        metrics.setTotal(results.length);
+                    }
+                }
+                if (metrics != null) {
+                    metrics.sessionStarted();
+                    started = true;
+                }
+            }
+
+            //Runs are numbered within the shard; the checkpoint and random choices use the combination index
+            int run;
+            while ((run = next.getAndIncrement()) < results.length) {
+                long index = firstRun + run;
+                if (checkpoint != null && checkpoint.isDone(index)) {
+                    //Restored runs are only logged if the log does not have them yet
+                    results[run] = checkpoint.getResult(index);
+                    long logged = runLog != null && runLog.contains(index) ? -1 : index;
+                    writer.write(new ResultWriter.Run(run + 1, logged, checkpoint.getRow(index), results[run], null));
+                    if (metrics != null) {
+                        metrics.runRestored();
+                    }
+                    continue;
+                }
+
+                int[] options = combinations.combinationAt(index);
+                FlowPruner.Run inferred = pruner == null ? null : pruner.infer(options);
+                if (inferred != null) {
+                    writer.write(new ResultWriter.Run(run + 1, index, inferred.getRow(), inferred.getResult(), null));
+                    results[run] = inferred.getResult();
+                    if (metrics != null) {
+                        metrics.runRestored();
+                    }
+                    if (checkpoint != null) {
+                        checkpoint.record(index, inferred.getRow(), inferred.getResult());
+                    }
+                    continue;
+                }
+
+                String result = app.runCombination(index, options);
+                Map<String, String> row = app.getFinishedRow();
+                results[run] = result;
+                runTimings[run] = app.getLastTimings();
+                writer.write(new ResultWriter.Run(run + 1, index, row, result, runTimings[run]));
+                if (pruner != null) {
+                    pruner.learn(options, app.getLastFlow(), result, row);
+                }
+                if (checkpoint != null) {
+                    checkpoint.record(index, row, result);
+                }
+            }
+        } finally {
+            //A session whose setup failed was never counted as started
+            if (started) {
+                metrics.sessionEnded();
+            }
+            timings.add(app.getTimings());
+            //The watchdog may have replaced the session's browser
+            app.getDriver().quit();
+        }
+    }
+
+    /*
+     * Prints results to excel sheet
+     */
+    private void printResults() {
+        Row row = sheet.getRow(0);
+        int cellNum = Math.max(0, row.getLastCellNum());
+        row.createCell(cellNum).setCellValue("Results");
+        for (int i = 0; i < results.length; i++) {
+            Row resultRow = sheet.getRow(i + 1);
+            if (resultRow == null) {
+                resultRow = sheet.createRow(i + 1);
+            }
+            resultRow.createCell(cellNum).setCellValue(results[i]);
+            if (timingColumns && runTimings[i] != null) {
+                LatencyRecorder.printTimings(resultRow, cellNum + 1, runTimings[i]);
+            }
+        }
+
+        if (timingColumns) {
+            String[] names = LatencyRecorder.getColumnNames();
+            for (int i = 0; i < names.length; i++) {
+                row.createCell(cellNum + 1 + i).setCellValue(names[i]);
+            }
+        }
+    }
+}
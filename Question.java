@@ -1,6 +1,7 @@
 package apptesting;
 
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import org.openqa.selenium.WebDriver;
 
 /*
@@ -9,31 +10,25 @@ import org.openqa.selenium.WebDriver;
  */
 abstract class Question {
 	private WebDriver driver;
-	private XSSFSheet sheet;
 	private String text;
-	private int column;
 	private int numOptions;
 	private String mode;
-	private boolean lastOption;
+	private boolean nativeInput;
+	private Sampler sampler;
+	private Map<String, String> row;
 	
 	/*
-	 * Creates a new Question object from the given driver, XSSFSheet, question text, corresponding column
-	 * on Excel sheet, testing mode, and number of options
+	 * Creates a new Question object from the given driver, question text, testing mode, and number of options
 	 * @param driver - the Selenium WebDriver to use
-	 * @param sheet - the XSSFSheet object to print to
 	 * @param text - the question text as a String
-	 * @param column - the column index of the XSSFSheet to print to as an integer
 	 * @param mode - the testing mode as a String
 	 * @param numOptions - the number of options as an integer
 	 */
-	protected Question(WebDriver driver, XSSFSheet sheet, String text, int column, String mode, int numOptions) {
+	protected Question(WebDriver driver, String text, String mode, int numOptions) {
 		this.driver = driver;
-		this.sheet = sheet;
 		this.text = text;
-		this.column = column;
 		this.mode = mode;
 		this.numOptions = numOptions;
-		lastOption = true;
 	}
 	
 	/*
@@ -44,10 +39,11 @@ abstract class Question {
 	}
 	
 	/*
-	 * @return - corresponding XSSFSheet to print to
+	 * Sets the WebDriver to use, after the browser was replaced
+	 * @param driver - the Selenium WebDriver to use
 	 */
-	public XSSFSheet getSheet() {
-		return sheet;
+	public void setDriver(WebDriver driver) {
+		this.driver = driver;
 	}
 	
 	/*
@@ -57,13 +53,6 @@ abstract class Question {
 		return text;
 	}
 	
-	/*
-	 * @return - column index for excel sheet
-	 */
-	public int getColumn() {
-		return column;
-	}
-	
 	/*
 	 * @return - number of options
 	 */
@@ -79,32 +68,84 @@ abstract class Question {
 	}
 	
 	/*
-	 * @return - question xpath
+	 * Sets whether the question's UI needs real user gestures, so it is never answered in a batch script
+	 * @param b - whether the question needs real user gestures
 	 */
-	public String getXpath(int i) {
-		return "(//div[@class='page-block__field-input'])[" + (i + 1) + "]";
+	public void setNativeInput(boolean b) {
+		nativeInput = b;
 	}
 	
 	/*
-	 * Sets lastOption variable
-	 * @param b - whether the current option is the question's last option
+	 * @return - true if the question's UI needs real user gestures
 	 */
-	protected void setLastOption(boolean b) {
-		lastOption = b;
+	public boolean isNativeInput() {
+		return nativeInput;
+	}
+
+	/*
+	 * Sets the answers of the run in progress, which the question prints to. The owner turns them into a
+	 * result event when the run ends, so answering never waits on the Sheet.
+	 * @param row - the printed answers of the run in progress, by question text
+	 */
+	public void setRow(Map<String, String> row) {
+		this.row = row;
 	}
 	
 	/*
-	 * @return - true if the last selected option was the last option
+	 * Prints the selected answer to the run in progress
+	 * @param value - the answer as a String
 	 */
-	public boolean isLastOption() {
-		return lastOption;
+	protected void print(String value) {
+		if (row == null) {
+			throw new IllegalStateException("No run in progress to print the answer to " + text + " to");
+		}
+		row.put(text, value);
 	}
 
 	/*
-	 * Abstract method called test implemented by all subclasses
-	 * Selects given option and prints the selection to Excel
+	 * Sets the Sampler that chooses options on "random" mode, so random runs can be replayed from its seed
+	 * @param sampler - the Sampler of the session
+	 */
+	public void setSampler(Sampler sampler) {
+		this.sampler = sampler;
+	}
+	
+	/*
+	 * Chooses a random option for the current run
+	 * @param bound - the number of options to choose from
+	 * @return - the option index, between 0 and bound - 1
+	 */
+	protected int randomOption(int bound) {
+		if (sampler == null) {
+			return ThreadLocalRandom.current().nextInt(bound);
+		}
+		return sampler.choose(text, bound);
+	}
+
+	/*
+	 * Selects given option and prints the selection to Excel, reading the page first
 	 * @param option - the integer index of the option to select (0 index)
 	 * @param position - the question's position on the page (0 index)
 	 */
-	abstract public void test(int option, int position);
+	public void test(int option, int position) {
+		test(option, PageSnapshot.take(driver).getField(position));
+	}
+
+	/*
+	 * Selects given option and prints the selection to Excel
+	 * @param option - the integer index of the option to select (0 index)
+	 * @param field - the question as read by a PageSnapshot of the current page
+	 */
+	public void test(int option, PageSnapshot.Field field) {
+		choose(option, field).apply(driver);
+	}
+
+	/*
+	 * Abstract method called choose implemented by all subclasses
+	 * Chooses given option and prints the selection to Excel without changing the page
+	 * @param option - the integer index of the option to select (0 index)
+	 * @param field - the question as read by a PageSnapshot of the current page
+	 * @return - the Answer to apply to the page
+	 */
+	abstract public Answer choose(int option, PageSnapshot.Field field);
 }
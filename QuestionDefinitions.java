@@ -0,0 +1,331 @@
+package apptesting;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import javax.xml.parsers.ParserConfigurationException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/*
+ * The QuestionDefinitions class holds the rows of the "Questions" sheet: each question's text, mode, type,
+ * number of options, default response and the optional exhaustive and native input flags, after a header row.
+ * They can be read from a workbook already in memory, streamed from an .xlsx file without loading it, or read
+ * from a plain-text file with the same columns. Streaming only parses the "Questions" sheet and its shared
+ * strings, so other sheets and earlier results in a large shared workbook cost nothing, and a .csv file (or a
+ * tab-separated .tsv or .txt file) skips POI altogether for the fastest startup.
+ */
+public class QuestionDefinitions {
+    public static final String SHEET_NAME = "Questions";
+    private static final int COLUMNS = 7;
+
+    private List<Definition> definitions = new ArrayList<Definition>();
+
+    private QuestionDefinitions() {
+    }
+
+    /*
+     * Reads the question definitions from a file, streaming the "Questions" sheet of an .xlsx file or parsing
+     * a .csv, .tsv or .txt file
+     * @param path - the path of the file as a String
+     * @return - the QuestionDefinitions in the file
+     */
+    public static QuestionDefinitions read(String path) throws IOException {
+        String lower = path.toLowerCase();
+        if (lower.endsWith(".csv")) {
+            return readText(path, ',');
+        } else if (lower.endsWith(".tsv") || lower.endsWith(".txt")) {
+            return readText(path, '\t');
+        }
+        return readXlsx(path);
+    }
+
+    /*
+     * Reads the question definitions from the "Questions" sheet of a workbook already in memory
+     * @param workbook - the XSSFWorkbook object containing the "Questions" sheet
+     * @return - the QuestionDefinitions on the sheet
+     */
+    public static QuestionDefinitions fromWorkbook(XSSFWorkbook workbook) {
+        Sheet inputSheet = workbook.getSheet(SHEET_NAME);
+        if (inputSheet == null) {
+            throw new IllegalArgumentException("The workbook has no " + SHEET_NAME + " sheet");
+        }
+        QuestionDefinitions read = new QuestionDefinitions();
+        DataFormatter df = new DataFormatter();
+        for (int r = inputSheet.getFirstRowNum() + 1; r <= inputSheet.getLastRowNum(); r++) {
+            Row inputRow = inputSheet.getRow(r);
+            if (inputRow == null) {
+                continue;
+            }
+            String[] cells = new String[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                cells[c] = df.formatCellValue(inputRow.getCell(c));
+            }
+            read.add(cells, r);
+        }
+        return read;
+    }
+
+    /*
+     * Streams the "Questions" sheet of an .xlsx file with SAX, opening the file read-only
+     */
+    private static QuestionDefinitions readXlsx(String path) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(path, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot open " + path + " as an .xlsx file", e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream sheet = sheets.next();
+                try {
+                    if (sheets.getSheetName().equals(SHEET_NAME)) {
+                        RowHandler rows = new RowHandler();
+                        XMLReader parser = XMLHelper.newXMLReader();
+                        parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), strings, rows,
+                                new DataFormatter(), false));
+                        parser.parse(new InputSource(sheet));
+                        return rows.read;
+                    }
+                } finally {
+                    sheet.close();
+                }
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Cannot read " + path, e);
+        } catch (SAXException e) {
+            throw new IOException("Cannot parse the " + SHEET_NAME + " sheet of " + path, e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Cannot parse the " + SHEET_NAME + " sheet of " + path, e);
+        } finally {
+            //Opened read-only, so nothing is saved back
+            pkg.revert();
+        }
+        throw new IllegalArgumentException(path + " has no " + SHEET_NAME + " sheet");
+    }
+
+    /*
+     * Parses a UTF-8 text file of delimited rows, where fields may be quoted with double quotes and a doubled
+     * quote inside a quoted field stands for one quote
+     */
+    private static QuestionDefinitions readText(String path, char delimiter) throws IOException {
+        Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8));
+        QuestionDefinitions read = new QuestionDefinitions();
+        try {
+            List<String> fields = new ArrayList<String>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int line = 0;
+            int c = in.read();
+            if (c == '\uFEFF') {
+                c = in.read();
+            }
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unclosed quote on row " + (line + 1) + " of " + path);
+                    } else if (c == '"') {
+                        c = in.read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    }
+                    field.append((char) c);
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    //The header row is skipped, and blank lines have no question so add() skips them
+                    if (line > 0) {
+                        String[] cells = new String[COLUMNS];
+                        for (int i = 0; i < COLUMNS; i++) {
+                            cells[i] = i < fields.size() ? fields.get(i).trim() : "";
+                        }
+                        read.add(cells, line);
+                    }
+                    fields.clear();
+                    line++;
+                    if (c == -1) {
+                        break;
+                    }
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = in.read();
+            }
+        } finally {
+            in.close();
+        }
+        return read;
+    }
+
+    /*
+     * Adds the definition in a row of cells, skipping rows without a question
+     * @param cells - the formatted cells of the row, in column order
+     * @param rowNum - the 0-based row number, for error messages
+     */
+    private void add(String[] cells, int rowNum) {
+        if (cells[0] == null || cells[0].isEmpty()) {
+            return;
+        }
+        int numOptions;
+        try {
+            numOptions = (int) Double.parseDouble(cells[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Row " + (rowNum + 1) + " of " + SHEET_NAME
+                    + " has no number of options: " + cells[3]);
+        }
+        definitions.add(new Definition(cells[0], cells[1], cells[2], numOptions, cells[4], isSet(cells[5]),
+                isSet(cells[6])));
+    }
+
+    /*
+     * @return - true if a flag cell says "true" or "yes"
+     */
+    private static boolean isSet(String flag) {
+        return flag != null && (flag.equalsIgnoreCase("true") || flag.equalsIgnoreCase("yes"));
+    }
+
+    /*
+     * @return - the definitions in row order
+     */
+    public List<Definition> getDefinitions() {
+        return Collections.unmodifiableList(definitions);
+    }
+
+    /*
+     * @return - the number of questions defined
+     */
+    public int size() {
+        return definitions.size();
+    }
+
+    /*
+     * The RowHandler class collects the formatted cells of each row streamed from the sheet
+     */
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private QuestionDefinitions read = new QuestionDefinitions();
+        private String[] cells;
+        private int column;
+        private boolean header = true;
+
+        public void startRow(int rowNum) {
+            cells = new String[COLUMNS];
+            Arrays.fill(cells, "");
+            column = -1;
+        }
+
+        public void endRow(int rowNum) {
+            //The first row in the sheet is the header
+            if (header) {
+                header = false;
+            } else {
+                read.add(cells, rowNum);
+            }
+        }
+
+        public void cell(String reference, String formattedValue, XSSFComment comment) {
+            //Blank cells are not streamed, so the column comes from the cell reference when there is one
+            column = reference == null ? column + 1 : new CellReference(reference).getCol();
+            if (column < COLUMNS) {
+                cells[column] = formattedValue == null ? "" : formattedValue;
+            }
+        }
+    }
+
+    /*
+     * The Definition class holds one question row
+     */
+    public static class Definition {
+        private String text;
+        private String mode;
+        private String type;
+        private int numOptions;
+        private String defaultResponse;
+        private boolean exhaustive;
+        private boolean nativeInput;
+
+        private Definition(String text, String mode, String type, int numOptions, String defaultResponse,
+                boolean exhaustive, boolean nativeInput) {
+            this.text = text;
+            this.mode = mode;
+            this.type = type;
+            this.numOptions = numOptions;
+            this.defaultResponse = defaultResponse;
+            this.exhaustive = exhaustive;
+            this.nativeInput = nativeInput;
+        }
+
+        /*
+         * @return - the question text
+         */
+        public String getText() {
+            return text;
+        }
+
+        /*
+         * @return - the mode: "test", "default", "random" or "first"
+         */
+        public String getMode() {
+            return mode;
+        }
+
+        /*
+         * @return - the question type
+         */
+        public String getType() {
+            return type;
+        }
+
+        /*
+         * @return - the number of options
+         */
+        public int getNumOptions() {
+            return numOptions;
+        }
+
+        /*
+         * @return - the default response, or "-1" for none
+         */
+        public String getDefaultResponse() {
+            return defaultResponse;
+        }
+
+        /*
+         * @return - true if the question must be tested exhaustively in covering array mode
+         */
+        public boolean isExhaustive() {
+            return exhaustive;
+        }
+
+        /*
+         * @return - true if the question's UI needs real user gestures in batch mode
+         */
+        public boolean isNativeInput() {
+            return nativeInput;
+        }
+    }
+}
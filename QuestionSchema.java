@@ -0,0 +1,153 @@
+package apptesting;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * The QuestionSchema class is a sidecar file recording every question the app has shown: its type and option
+ * texts. Questions discovered adaptively are created from it at startup so later sweeps skip detection, and
+ * each question's options are compared against it once per process to detect schema drift cheaply. Drift is
+ * kept for a report at the end of the sweep. The file is append-only, one tab-separated line per question, and
+ * later lines replace earlier ones.
+ */
+public class QuestionSchema implements Closeable {
+    private LinkedHashMap<String, String[]> entries = new LinkedHashMap<String, String[]>();
+    private Writer out;
+    private List<String> drift = new ArrayList<String>();
+
+    /*
+     * Opens the schema file at the given path, loading any questions recorded by earlier processes
+     * @param path - the path of the schema file as a String
+     */
+    public QuestionSchema(String path) throws IOException {
+        File f = new File(path);
+        if (f.exists()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length >= 2) {
+                        String[] entry = new String[fields.length - 1];
+                        for (int i = 1; i < fields.length; i++) {
+                            entry[i - 1] = unescape(fields[i]);
+                        }
+                        entries.put(unescape(fields[0]), entry);
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f, true), StandardCharsets.UTF_8));
+    }
+
+    /*
+     * @return - the text of every recorded question, in the order first recorded
+     */
+    public synchronized List<String> getTexts() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /*
+     * @param text - the question text as a String
+     * @return - the recorded question type, or null if the question has not been recorded
+     */
+    public synchronized String getType(String text) {
+        String[] entry = entries.get(text);
+        return entry == null ? null : entry[0];
+    }
+
+    /*
+     * @param text - the question text as a String
+     * @return - the recorded option texts, or null if the question has not been recorded
+     */
+    public synchronized List<String> getOptions(String text) {
+        String[] entry = entries.get(text);
+        return entry == null ? null : Arrays.asList(entry).subList(1, entry.length);
+    }
+
+    /*
+     * Compares a question on the page with the schema, recording it if it is new or has changed, and
+     * recording the drift if it has changed
+     * @param text - the question text as a String
+     * @param type - the question type as a String
+     * @param options - the option texts
+     * @return - false if the question was recorded with a different type or options
+     */
+    public synchronized boolean check(String text, String type, List<String> options) throws IOException {
+        String[] entry = new String[options.size() + 1];
+        entry[0] = type;
+        for (int i = 0; i < options.size(); i++) {
+            entry[i + 1] = options.get(i);
+        }
+
+        String[] recorded = entries.get(text);
+        if (Arrays.equals(recorded, entry)) {
+            return true;
+        }
+        if (recorded != null) {
+            drift.add(text + ": " + recorded[0] + " " + Arrays.asList(recorded).subList(1, recorded.length)
+                    + " -> " + type + " " + options);
+        }
+        entries.put(text, entry);
+        out.write(escape(text));
+        for (String field : entry) {
+            out.write("\t");
+            out.write(escape(field));
+        }
+        out.write("\n");
+        out.flush();
+        return recorded == null;
+    }
+
+    /*
+     * @return - a description of each question whose type or options changed since it was recorded
+     */
+    public synchronized List<String> getDrift() {
+        return new ArrayList<String>(drift);
+    }
+
+    /*
+     * @return - one line per question whose type or options changed since it was recorded
+     */
+    public synchronized String getDriftReport() {
+        StringBuilder report = new StringBuilder();
+        for (String change : drift) {
+            report.append("Schema drift: ").append(change).append("\n");
+        }
+        return report.toString();
+    }
+
+    /*
+     * Closes the schema file
+     */
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /*
+     * @return - the String with backslashes, tabs and line breaks escaped
+     */
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /*
+     * @return - the String with escapes from escape() undone
+     */
+    private static String unescape(String s) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
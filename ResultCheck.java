@@ -0,0 +1,199 @@
+package apptesting;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+/*
+ * The ResultCheck class decides the result of a run from the page the app ended on. Success and failure
+ * conditions are declared per app: the URL matching a pattern, an element being present, a text appearing
+ * within an element, or a document-generation status element showing a given status. Every condition is
+ * evaluated in a single script call that only looks at the elements it targets, and the result names the
+ * conditions behind it, for example "Success! (status: Document generated)" or "Failure: no download link".
+ * A run succeeds when every success condition holds and no failure condition does, so a check with no
+ * conditions passes every run that reaches the end of the app; SampleMain refuses to start without a success
+ * condition. URL patterns and status texts are checked when a condition is added, and a selector the browser
+ * rejects is named in the result of every run, so a typo in a condition does not pass for an app failure.
+ */
+public class ResultCheck {
+    public static final String URL = "url";
+    public static final String ELEMENT = "element";
+    public static final String TEXT = "text";
+    public static final String STATUS = "status";
+
+    private static final String SCRIPT = "var conditions = arguments[0], verdicts = [];"
+            + "for (var i = 0; i < conditions.length; i++) {"
+            + "  var kind = conditions[i][0], target = conditions[i][1], value = conditions[i][2];"
+            + "  var matched = false, detail = '', invalid = false;"
+            + "  try {"
+            + "    if (kind == 'url') {"
+            + "      detail = location.href;"
+            + "      matched = new RegExp(value).test(detail);"
+            + "    } else if (kind == 'element') {"
+            + "      matched = document.querySelector(target) != null;"
+            + "    } else {"
+            + "      var element = document.querySelector(target);"
+            + "      detail = element ? element.textContent.replace(/\\s+/g, ' ').trim() : '';"
+            + "      matched = element != null && detail.indexOf(value) >= 0;"
+            + "    }"
+            + "  } catch (e) {"
+            + "    detail = 'invalid: ' + e.message;"
+            + "    invalid = true;"
+            + "  }"
+            + "  verdicts.push([matched, kind == 'status' || invalid ? detail : '']);"
+            + "}"
+            + "return verdicts;";
+
+    private List<Condition> conditions = new ArrayList<Condition>();
+
+    /*
+     * Adds a condition that must hold for a run to succeed
+     * @param name - the name of the condition used in results
+     * @param kind - URL, ELEMENT, TEXT or STATUS
+     * @param target - the CSS selector of the element to look at (ignored for URL)
+     * @param value - the regular expression the URL must match, or the text the element must contain
+     * (ignored for ELEMENT, required for STATUS)
+     */
+    public void addSuccess(String name, String kind, String target, String value) {
+        conditions.add(new Condition(name, kind, target, value, true));
+    }
+
+    /*
+     * Adds a condition that makes a run fail if it holds, with the same arguments as addSuccess
+     */
+    public void addFailure(String name, String kind, String target, String value) {
+        conditions.add(new Condition(name, kind, target, value, false));
+    }
+
+    /*
+     * @return - true if at least one success condition was added
+     */
+    public boolean hasSuccessCondition() {
+        for (Condition condition : conditions) {
+            if (condition.success) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Evaluates every condition on the current page
+     * @param driver - the WebDriver on the app's last page
+     * @return - the Verdict of the run
+     */
+    @SuppressWarnings("unchecked")
+    public Verdict check(WebDriver driver) {
+        if (conditions.isEmpty()) {
+            return new Verdict(true, "Success!");
+        }
+
+        List<Object> args = new ArrayList<Object>();
+        for (Condition condition : conditions) {
+            args.add(Arrays.asList(condition.kind, condition.target, condition.value));
+        }
+        List<Object> verdicts = (List<Object>) ((JavascriptExecutor) driver).executeScript(SCRIPT, args);
+
+        List<String> reasons = new ArrayList<String>();
+        List<String> details = new ArrayList<String>();
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            List<Object> verdict = (List<Object>) verdicts.get(i);
+            boolean matched = Boolean.TRUE.equals(verdict.get(0));
+            String detail = (String) verdict.get(1);
+            if (detail != null && !detail.isEmpty()) {
+                details.add(condition.name + ": " + detail);
+            }
+            if (condition.success && !matched) {
+                reasons.add("no " + condition.name);
+            } else if (!condition.success && matched) {
+                reasons.add(condition.name);
+            }
+        }
+
+        String suffix = details.isEmpty() ? "" : " (" + join(details) + ")";
+        if (reasons.isEmpty()) {
+            return new Verdict(true, "Success!" + suffix);
+        }
+        return new Verdict(false, "Failure: " + join(reasons) + suffix);
+    }
+
+    /*
+     * @return - the given strings separated by commas
+     */
+    private static String join(List<String> strings) {
+        StringBuilder joined = new StringBuilder();
+        for (String s : strings) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(s);
+        }
+        return joined.toString();
+    }
+
+    /*
+     * The Condition class holds one declared condition
+     */
+    private static class Condition {
+        private String name;
+        private String kind;
+        private String target;
+        private String value;
+        private boolean success;
+
+        private Condition(String name, String kind, String target, String value, boolean success) {
+            if (!kind.equals(URL) && !kind.equals(ELEMENT) && !kind.equals(TEXT) && !kind.equals(STATUS)) {
+                throw new IllegalArgumentException("Unknown condition kind: " + kind);
+            }
+            if (!kind.equals(URL) && (target == null || target.isEmpty())) {
+                throw new IllegalArgumentException("The " + kind + " condition " + name + " needs a selector");
+            }
+            if (kind.equals(STATUS) && (value == null || value.isEmpty())) {
+                throw new IllegalArgumentException("The status condition " + name + " needs the status to look for");
+            }
+            if (kind.equals(URL)) {
+                try {
+                    Pattern.compile(value == null ? "" : value);
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("The url condition " + name + " has an invalid pattern: "
+                            + e.getDescription(), e);
+                }
+            }
+            this.name = name;
+            this.kind = kind;
+            this.target = target == null ? "" : target;
+            this.value = value == null ? "" : value;
+            this.success = success;
+        }
+    }
+
+    /*
+     * The Verdict class holds the outcome of a check
+     */
+    public static class Verdict {
+        private boolean success;
+        private String result;
+
+        private Verdict(boolean success, String result) {
+            this.success = success;
+            this.result = result;
+        }
+
+        /*
+         * @return - true if the run succeeded
+         */
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /*
+         * @return - the result to print in the Results column
+         */
+        public String getResult() {
+            return result;
+        }
+    }
+}
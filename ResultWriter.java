@@ -0,0 +1,363 @@
+package apptesting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/*
+ * The ResultWriter class turns result events into rows of an output sheet and records in a run log. Each
+ * finished run is one immutable Run event holding its printed answers by question text, its result and its
+ * timings. Once started, a single writer thread takes the events from a bounded queue, so the threads driving
+ * browsers never wait on POI or contend for the sheet; when the queue is full they wait for the writer to catch
+ * up instead of piling up rows in memory. Before it is started, and after it is closed, events are written on
+ * the calling thread. Columns are found by question text, and a question without a column is given the next
+ * free one.
+ */
+public class ResultWriter implements Closeable {
+    private static final Object STOP = new Object();
+
+    private Sheet sheet;
+    private StreamingResults output;
+    private int resultColumn = -1;
+    private boolean timingColumns = false;
+    private RunLog runLog;
+    private HashMap<String, Integer> columns = new HashMap<String, Integer>();
+    private int nextColumn = 0;
+    private BlockingQueue<Object> queue;
+    private Thread thread;
+    private volatile Throwable failure;
+
+    /*
+     * Constructs a new ResultWriter printing to an in-memory sheet
+     * @param sheet - the Sheet to print to, with a header row
+     */
+    public ResultWriter(Sheet sheet) {
+        this.sheet = sheet;
+    }
+
+    /*
+     * Constructs a new ResultWriter printing to streaming output, which must be given rows in ascending order
+     * @param output - the StreamingResults to print to
+     */
+    public ResultWriter(StreamingResults output) {
+        this.output = output;
+        sheet = output.getSheet();
+    }
+
+    /*
+     * Sets the column each run's result is printed to, with its phase times in the following columns. With no
+     * result column only the answers are printed and the caller prints results once every run has ended.
+     * @param column - the column index of the results, or -1 for none
+     * @param timingColumns - whether to print phase times
+     */
+    public synchronized void setResultColumn(int column, boolean timingColumns) {
+        resultColumn = column;
+        this.timingColumns = timingColumns;
+    }
+
+    /*
+     * Sets a run log every Run with a combination index is also appended to
+     * @param runLog - the RunLog to append to, or null for none
+     */
+    public synchronized void setRunLog(RunLog runLog) {
+        this.runLog = runLog;
+    }
+
+    /*
+     * Starts the writer thread
+     * @param capacity - the number of events that can wait for the writer before senders have to wait too
+     */
+    public synchronized void start(int capacity) {
+        if (thread != null) {
+            return;
+        }
+        final BlockingQueue<Object> events = new ArrayBlockingQueue<Object>(capacity);
+        queue = events;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                drain(events);
+            }
+        }, "result-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Names a column, printing the name to the header row
+     * @param column - the column index as an integer
+     * @param text - the column name as a String
+     */
+    public void setColumnName(int column, String text) {
+        send(new Column(column, text));
+    }
+
+    /*
+     * Prints a finished run, waiting if the queue is full
+     * @param run - the Run to print
+     */
+    public void write(Run run) {
+        send(run);
+    }
+
+    /*
+     * Waits until every event sent so far has been written
+     */
+    public void flush() {
+        CountDownLatch written = new CountDownLatch(1);
+        send(written);
+        try {
+            while (!written.await(100, TimeUnit.MILLISECONDS)) {
+                checkAlive();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for results to be written", e);
+        }
+        checkFailure();
+    }
+
+    /*
+     * Writes every event sent so far and stops the writer thread. Later events are written on the calling
+     * thread, until the writer is started again.
+     */
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            stopping = thread;
+        }
+        if (stopping == null) {
+            return;
+        }
+        flush();
+        put(STOP);
+        try {
+            stopping.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping the result writer", e);
+        }
+        synchronized (this) {
+            thread = null;
+            queue = null;
+        }
+    }
+
+    /*
+     * Sends an event to the writer thread, or writes it right away if there is none
+     */
+    private void send(Object event) {
+        checkFailure();
+        synchronized (this) {
+            if (thread == null) {
+                apply(event);
+                return;
+            }
+        }
+        put(event);
+    }
+
+    /*
+     * Adds an event to the queue, waiting for space while the writer thread is alive
+     */
+    private void put(Object event) {
+        BlockingQueue<Object> events;
+        synchronized (this) {
+            events = queue;
+        }
+        try {
+            while (!events.offer(event, 100, TimeUnit.MILLISECONDS)) {
+                checkAlive();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the result writer", e);
+        }
+    }
+
+    /*
+     * Writes events until told to stop. After a failure the remaining events are only taken off the queue,
+     * so senders are not left waiting, and the failure is thrown to the next sender.
+     */
+    private void drain(BlockingQueue<Object> events) {
+        while (true) {
+            Object event;
+            try {
+                event = events.take();
+            } catch (InterruptedException e) {
+                failure = e;
+                return;
+            }
+            if (event == STOP) {
+                return;
+            }
+            if (event instanceof CountDownLatch) {
+                ((CountDownLatch) event).countDown();
+            } else if (failure == null) {
+                try {
+                    synchronized (this) {
+                        apply(event);
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /*
+     * Throws if the writer thread has stopped without being closed, so senders do not wait for it forever
+     */
+    private void checkAlive() {
+        Thread writing;
+        synchronized (this) {
+            writing = thread;
+        }
+        if (writing != null && !writing.isAlive()) {
+            throw new IllegalStateException("Result writer stopped", failure);
+        }
+    }
+
+    /*
+     * Throws the failure of the writer thread, if it failed
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Result writer failed", failure);
+        }
+    }
+
+    /*
+     * Writes an event to the sheet and run log
+     */
+    private void apply(Object event) {
+        if (event instanceof CountDownLatch) {
+            ((CountDownLatch) event).countDown();
+        } else if (event instanceof Column) {
+            Column column = (Column) event;
+            columns.put(column.text, column.index);
+            nextColumn = Math.max(nextColumn, column.index + 1);
+            printColumnName(column.index, column.text);
+        } else {
+            print((Run) event);
+        }
+    }
+
+    /*
+     * Prints a run to its row and appends it to the run log
+     */
+    private void print(Run run) {
+        Row row = sheet.getRow(run.row);
+        if (row == null) {
+            row = sheet.createRow(run.row);
+        }
+        for (Map.Entry<String, String> answer : run.answers.entrySet()) {
+            Integer column = columns.get(answer.getKey());
+            if (column == null) {
+                column = nextColumn++;
+                columns.put(answer.getKey(), column);
+                printColumnName(column, answer.getKey());
+            }
+            row.createCell(column).setCellValue(answer.getValue());
+        }
+        if (resultColumn >= 0) {
+            row.createCell(resultColumn).setCellValue(run.result);
+            if (timingColumns && run.timings != null) {
+                LatencyRecorder.printTimings(row, resultColumn + 1, run.timings);
+            }
+        }
+
+        if (runLog != null && run.index >= 0) {
+            try {
+                runLog.record(run.index, run.answers, run.result, run.timings);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /*
+     * Prints the name of a column to the header row
+     */
+    private void printColumnName(int column, String text) {
+        if (output != null) {
+            output.setColumnName(column, text);
+        } else {
+            sheet.getRow(0).createCell(column).setCellValue(text);
+        }
+    }
+
+    /*
+     * The Column class is the event of a column being named
+     */
+    private static class Column {
+        private final int index;
+        private final String text;
+
+        private Column(int index, String text) {
+            this.index = index;
+            this.text = text;
+        }
+    }
+
+    /*
+     * The Run class is the immutable event of a finished run
+     */
+    public static final class Run {
+        private final int row;
+        private final long index;
+        private final Map<String, String> answers;
+        private final String result;
+        private final long[] timings;
+
+        /*
+         * Constructs a new Run, copying the answers and timings
+         * @param row - the output row index of the run
+         * @param index - the combination index of the run, or -1 if it is not to be logged
+         * @param answers - the printed answers, by question text
+         * @param result - the result of the run as a String
+         * @param timings - the phase times and total in microseconds, or null if the run was not timed
+         */
+        public Run(int row, long index, Map<String, String> answers, String result, long[] timings) {
+            this.row = row;
+            this.index = index;
+            this.answers = Collections.unmodifiableMap(new LinkedHashMap<String, String>(answers));
+            this.result = result;
+            this.timings = timings == null ? null : timings.clone();
+        }
+
+        /*
+         * @return - the output row index of the run
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /*
+         * @return - the printed answers, by question text
+         */
+        public Map<String, String> getAnswers() {
+            return answers;
+        }
+
+        /*
+         * @return - the result of the run as a String
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /*
+         * @return - the phase times and total in microseconds, or null if the run was not timed
+         */
+        public long[] getTimings() {
+            return timings == null ? null : timings.clone();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package apptesting;
+
+import java.util.*;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+/*
+ * The RunBook class keeps track of the runs of a SampleApp: the answers printed by the run in progress, the
+ * row the next finished run goes to and the last finished run. Each finished run is sent to a ResultWriter as
+ * a Run event. While an attempt is supervised its event is held back until the attempt succeeds, so an
+ * abandoned attempt prints nothing. Results are only kept for every run when they are printed to an in-memory
+ * sheet, whose result column is not known until the last run has discovered its questions.
+ */
+public class RunBook {
+    private ResultWriter writer;
+    private boolean keepResults = false;
+    private LinkedHashMap<String, String> current = new LinkedHashMap<String, String>();
+    private ResultWriter.Run lastRow;
+    private int nextRow = 1;
+    private boolean holding = false;
+    private ArrayList<String> results = new ArrayList<String>();
+    private ArrayList<long[]> runTimings = new ArrayList<long[]>();
+
+    /*
+     * Sets the writer finished runs are sent to, starting again from the first row
+     * @param writer - the ResultWriter to send runs to, or null to only keep the last finished run
+     * @param keepResults - whether every result is kept for printResults()
+     */
+    public void setWriter(ResultWriter writer, boolean keepResults) {
+        this.writer = writer;
+        this.keepResults = keepResults;
+        nextRow = 1;
+    }
+
+    /*
+     * @return - the answers printed by the run in progress, by question text, which questions print to
+     */
+    public Map<String, String> getCurrent() {
+        return current;
+    }
+
+    /*
+     * Holds back the next finished run until release()
+     */
+    public void hold() {
+        holding = true;
+    }
+
+    /*
+     * Prints the finished run that was held back
+     */
+    public void release() {
+        holding = false;
+        print(lastRow);
+    }
+
+    /*
+     * Forgets the run in progress, including the answers it printed, and stops holding runs back
+     */
+    public void discard() {
+        holding = false;
+        current.clear();
+    }
+
+    /*
+     * Ends the run in progress, printing it unless it is held back
+     * @param result - the result of the run as a String
+     * @param timings - the phase times and total in microseconds, or null if the run was not timed
+     */
+    public void finish(String result, long[] timings) {
+        lastRow = new ResultWriter.Run(nextRow, -1, current, result, timings);
+        current.clear();
+        if (!holding) {
+            print(lastRow);
+        }
+    }
+
+    /*
+     * Ends a run that was not executed, restored from a checkpoint or inferred, with the given answers
+     * @param cells - the printed answers, by question text
+     * @param result - the result of the run as a String
+     */
+    public void finish(Map<String, String> cells, String result) {
+        current.clear();
+        current.putAll(cells);
+        finish(result, null);
+    }
+
+    /*
+     * @return - the answers printed in the last finished run, by question text
+     */
+    public Map<String, String> getFinishedRow() {
+        return new LinkedHashMap<String, String>(lastRow.getAnswers());
+    }
+
+    /*
+     * Sends a finished run to the writer, keeping its result if results are kept
+     */
+    private void print(ResultWriter.Run run) {
+        if (writer == null) {
+            return;
+        }
+        writer.write(run);
+        nextRow++;
+        if (keepResults) {
+            results.add(run.getResult());
+            runTimings.add(run.getTimings());
+        }
+    }
+
+    /*
+     * Prints the kept results to an in-memory sheet, after its last question column
+     * @param sheet - the Sheet the runs were printed to
+     * @param timingColumns - whether to print phase times after the results
+     */
+    public void printResults(Sheet sheet, boolean timingColumns) {
+        Row row = sheet.getRow(0);
+        int cellNum = row.getLastCellNum();
+        row.createCell(cellNum).setCellValue("Results");
+        for (int i = 0; i < results.size(); i++) {
+            sheet.getRow(i + 1).createCell(cellNum).setCellValue(results.get(i));
+        }
+
+        if (timingColumns) {
+            String[] names = LatencyRecorder.getColumnNames();
+            for (int i = 0; i < names.length; i++) {
+                row.createCell(cellNum + 1 + i).setCellValue(names[i]);
+            }
+            for (int i = 0; i < runTimings.size(); i++) {
+                if (runTimings.get(i) != null) {
+                    LatencyRecorder.printTimings(sheet.getRow(i + 1), cellNum + 1, runTimings.get(i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * The RunFile class is the append-only file format shared by Checkpoint and RunLog. A file is a sequence of
+ * records: the plan the runs were made for, a dictionary of column names with the type of the questions
+ * discovered while running, a dictionary of answers and results, and one record per run holding its
+ * combination index, its result and answers as dictionary ids and its phase times if it was timed. Records are
+ * buffered and forced to disk every few runs, so at most the last batch is lost in a crash, and a record cut
+ * short at the end of the file is skipped when it is loaded. Subclasses index the runs as they are loaded or
+ * appended and read them back by position.
+ */
+public abstract class RunFile implements Closeable {
+    private static final byte PLAN = 'P';
+    private static final byte COLUMN = 'C';
+    private static final byte VALUE = 'V';
+    private static final byte RUN = 'R';
+
+    private RandomAccessFile file;
+    private DataOutputStream out;
+    private FileOutputStream stream;
+    private int syncEvery;
+    private int unsynced = 0;
+    private long length;
+    private String plan;
+    private HashMap<String, Integer> columnIds = new HashMap<String, Integer>();
+    private ArrayList<String> columnNames = new ArrayList<String>();
+    private ArrayList<String> columnTypes = new ArrayList<String>();
+    private HashMap<String, Integer> valueIds = new HashMap<String, Integer>();
+    private ArrayList<String> values = new ArrayList<String>();
+
+    /*
+     * Constructs a new RunFile
+     * @param syncEvery - the number of runs between forcing the file to disk as an integer
+     */
+    protected RunFile(int syncEvery) {
+        this.syncEvery = Math.max(1, syncEvery);
+    }
+
+    /*
+     * Opens the file at the given path, loading every complete record in it. Called by subclass constructors
+     * once their indexes exist.
+     * @param path - the path of the file as a String
+     * @param readOnly - whether to open the file without changing it, so a partial record at the end is
+     * skipped but not removed and nothing can be appended
+     */
+    protected void open(String path, boolean readOnly) throws IOException {
+        File f = new File(path);
+        if (readOnly) {
+            length = load(f);
+            file = new RandomAccessFile(f, "r");
+            return;
+        }
+        length = f.exists() ? load(f) : 0;
+
+        //Drop a record cut short by a crash before appending
+        file = new RandomAccessFile(f, "rw");
+        file.setLength(length);
+        stream = new FileOutputStream(f, true);
+        out = new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    /*
+     * Reads every complete record in the file
+     * @return - the length of the file up to the end of the last complete record
+     */
+    private long load(File f) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+        long end = 0;
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == PLAN) {
+                    String s = in.readUTF();
+                    plan = s;
+                    end += 1 + utfLength(s);
+                } else if (type == COLUMN) {
+                    String name = in.readUTF();
+                    String questionType = in.readUTF();
+                    addColumn(name, questionType);
+                    end += 1 + utfLength(name) + utfLength(questionType);
+                } else if (type == VALUE) {
+                    String value = in.readUTF();
+                    addValue(value);
+                    end += 1 + utfLength(value);
+                } else if (type == RUN) {
+                    long index = in.readLong();
+                    int result = in.readInt();
+                    int[] cells = new int[in.readShort() * 2];
+                    for (int i = 0; i < cells.length; i++) {
+                        cells[i] = in.readInt();
+                    }
+                    int phases = in.readByte();
+                    for (int i = 0; i < phases; i++) {
+                        in.readLong();
+                    }
+                    indexRun(end, index, result, cells);
+                    end += runLength(cells.length, phases);
+                } else {
+                    throw new IOException("Corrupt record at byte " + end + " of " + f);
+                }
+            }
+        } catch (EOFException e) {
+            //A partial record after the last complete one is discarded
+            return end;
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * Indexes a run as it is loaded or appended
+     * @param offset - the position of the run's record, for readRun()
+     * @param index - the combination index
+     * @param result - the dictionary id of the result
+     * @param cells - the column id and value id of each answer, in turn
+     */
+    protected abstract void indexRun(long offset, long index, int result, int[] cells);
+
+    /*
+     * Records the plan the runs are made for, if the file has none yet
+     * @param plan - a description of the runs, such as the options of each question and the strength
+     * @return - the plan already in the file, or null if the given one was recorded
+     */
+    protected String writePlan(String plan) throws IOException {
+        if (this.plan != null) {
+            return this.plan;
+        }
+        checkWritable();
+        this.plan = plan;
+        out.writeByte(PLAN);
+        out.writeUTF(plan);
+        length += 1 + utfLength(plan);
+        return null;
+    }
+
+    /*
+     * @return - the description of the runs the file was made for, or null if none was set
+     */
+    public synchronized String getPlan() {
+        return plan;
+    }
+
+    /*
+     * Appends a run
+     * @param index - the combination index
+     * @param row - the printed answers, by question text
+     * @param result - the result of the run as a String
+     * @param timings - the phase times and total in microseconds, or null if the run was not timed
+     */
+    protected void appendRun(long index, Map<String, String> row, String result, long[] timings) throws IOException {
+        checkWritable();
+        int[] cells = new int[row.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> cell : row.entrySet()) {
+            cells[i++] = columnId(cell.getKey(), "");
+            cells[i++] = valueId(cell.getValue());
+        }
+        int resultId = valueId(result);
+        int phases = timings == null ? 0 : timings.length;
+
+        indexRun(length, index, resultId, cells);
+        out.writeByte(RUN);
+        out.writeLong(index);
+        out.writeInt(resultId);
+        out.writeShort(row.size());
+        for (int cell : cells) {
+            out.writeInt(cell);
+        }
+        out.writeByte(phases);
+        for (int p = 0; p < phases; p++) {
+            out.writeLong(timings[p]);
+        }
+        length += runLength(cells.length, phases);
+
+        if (++unsynced >= syncEvery) {
+            sync();
+        }
+    }
+
+    /*
+     * Reads back the run whose record is at the given position
+     * @param offset - the position passed to indexRun()
+     * @return - the Entry of the run
+     */
+    protected Entry readRun(long offset) throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+        file.seek(offset + 1);
+        long index = file.readLong();
+        String result = values.get(file.readInt());
+        int cells = file.readShort();
+        LinkedHashMap<String, String> row = new LinkedHashMap<String, String>();
+        for (int i = 0; i < cells; i++) {
+            String column = columnNames.get(file.readInt());
+            row.put(column, values.get(file.readInt()));
+        }
+        int phases = file.readByte();
+        long[] timings = phases == 0 ? null : new long[phases];
+        for (int i = 0; i < phases; i++) {
+            timings[i] = file.readLong();
+        }
+        return new Entry(index, row, result, timings);
+    }
+
+    /*
+     * @return - the id of a column name, writing a dictionary record if it is new
+     * @param name - the column name
+     * @param type - the question type of a question discovered while running, or "" for none
+     */
+    protected int columnId(String name, String type) throws IOException {
+        Integer id = columnIds.get(name);
+        if (id == null) {
+            checkWritable();
+            id = addColumn(name, type);
+            out.writeByte(COLUMN);
+            out.writeUTF(name);
+            out.writeUTF(type);
+            length += 1 + utfLength(name) + utfLength(type);
+        }
+        return id;
+    }
+
+    /*
+     * @return - the id of an answer or result, or -1 if it is not in the dictionary
+     */
+    protected int findValue(String value) {
+        Integer id = valueIds.get(value);
+        return id == null ? -1 : id;
+    }
+
+    /*
+     * @return - the id of a column name, or -1 if it is not in the dictionary
+     */
+    protected int findColumn(String name) {
+        Integer id = columnIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /*
+     * @return - the answer or result with the given id
+     */
+    protected String getValue(int id) {
+        return values.get(id);
+    }
+
+    /*
+     * @return - the number of answers and results in the dictionary
+     */
+    protected int getValueCount() {
+        return values.size();
+    }
+
+    /*
+     * @return - the column names in the order they were first recorded
+     */
+    protected List<String> getColumnNames() {
+        return new ArrayList<String>(columnNames);
+    }
+
+    /*
+     * @return - the question type recorded with each column name, "" for columns that are not discovered
+     * questions, in the same order as getColumnNames()
+     */
+    protected List<String> getColumnTypes() {
+        return new ArrayList<String>(columnTypes);
+    }
+
+    /*
+     * Writes buffered records and forces the file to disk
+     */
+    public synchronized void sync() throws IOException {
+        if (out != null) {
+            out.flush();
+            stream.getFD().sync();
+            unsynced = 0;
+        }
+    }
+
+    /*
+     * Syncs and closes the file
+     */
+    public synchronized void close() throws IOException {
+        sync();
+        if (out != null) {
+            out.close();
+        }
+        file.close();
+    }
+
+    /*
+     * Fails if the file was opened read-only
+     */
+    private void checkWritable() {
+        if (out == null) {
+            throw new IllegalStateException("The file was opened read-only");
+        }
+    }
+
+    /*
+     * @return - the id of an answer or result, writing a dictionary record if it is new
+     */
+    private int valueId(String value) throws IOException {
+        Integer id = valueIds.get(value);
+        if (id == null) {
+            id = addValue(value);
+            out.writeByte(VALUE);
+            out.writeUTF(value);
+            length += 1 + utfLength(value);
+        }
+        return id;
+    }
+
+    /*
+     * Adds a column to the in-memory dictionary
+     */
+    private int addColumn(String name, String type) {
+        columnIds.put(name, columnNames.size());
+        columnNames.add(name);
+        columnTypes.add(type);
+        return columnNames.size() - 1;
+    }
+
+    /*
+     * Adds an answer or result to the in-memory dictionary
+     */
+    private int addValue(String value) {
+        valueIds.put(value, values.size());
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    /*
+     * @return - the number of bytes of a run record
+     */
+    private static long runLength(int cells, int phases) {
+        return 1 + 8 + 4 + 2 + 4 * cells + 1 + 8 * phases;
+    }
+
+    /*
+     * @return - the number of bytes writeUTF uses for the given String
+     */
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /*
+     * The Entry class holds one run read back from the file
+     */
+    public static class Entry {
+        private long index;
+        private Map<String, String> row;
+        private String result;
+        private long[] timings;
+
+        private Entry(long index, Map<String, String> row, String result, long[] timings) {
+            this.index = index;
+            this.row = row;
+            this.result = result;
+            this.timings = timings;
+        }
+
+        /*
+         * @return - the combination index of the run
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /*
+         * @return - the printed answers, by question text
+         */
+        public Map<String, String> getRow() {
+            return row;
+        }
+
+        /*
+         * @return - the result of the run as a String
+         */
+        public String getResult() {
+            return result;
+        }
+
+        /*
+         * @return - the phase times and total in microseconds, or null if the run was not timed
+         */
+        public long[] getTimings() {
+            return timings;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * The RunLog class keeps a compact append-only file of every run in a sweep: its combination index, the
+ * answer printed for each question, its result and its phase timings. Question texts, answers and results
+ * are stored once in a dictionary and runs refer to them by id, in the RunFile format shared with Checkpoint,
+ * so a 100k-run sweep takes a few megabytes, loads in a single pass and a checkpoint can be read as a run log.
+ * An in-memory index of which runs gave each answer and each result lets the log be filtered while the sweep
+ * is still running, and RunLogExporter turns all or some of it into an Excel report. Runs logged again, for
+ * example after a restart, replace the earlier record of the same combination index.
+ */
+public class RunLog extends RunFile {
+    private long[] offsets = new long[1024];
+    private int size = 0;
+    private HashMap<Long, Integer> records = new HashMap<Long, Integer>();
+    private HashMap<Long, BitSet> answerIndex = new HashMap<Long, BitSet>();
+    private HashMap<Integer, BitSet> resultIndex = new HashMap<Integer, BitSet>();
+    private BitSet replaced = new BitSet();
+
+    /*
+     * Opens the run log at the given path, loading and indexing any runs already in it
+     * @param path - the path of the run log file as a String
+     * @param syncEvery - the number of runs between forcing the file to disk as an integer
+     */
+    public RunLog(String path, int syncEvery) throws IOException {
+        this(path, syncEvery, false);
+    }
+
+    /*
+     * Opens the run log at the given path, for reading only or for recording
+     */
+    private RunLog(String path, int syncEvery, boolean readOnly) throws IOException {
+        super(syncEvery);
+        open(path, readOnly);
+    }
+
+    /*
+     * Opens the run log or checkpoint at the given path without changing it, for tools such as ShardMerger
+     * and RunLogExporter that read a file a sweep may still be appending to. A partial record at the end is
+     * skipped, not removed, and nothing can be recorded.
+     * @param path - the path of the file as a String
+     * @return - the read-only RunLog
+     */
+    public static RunLog readOnly(String path) throws IOException {
+        return new RunLog(path, 1, true);
+    }
+
+    /*
+     * Appends a run
+     * @param index - the combination index
+     * @param row - the printed answers, by question text
+     * @param result - the result of the run as a String
+     * @param timings - the phase times and total from LatencyRecorder.endRun() in microseconds, or null if the
+     * run was not timed
+     */
+    public synchronized void record(long index, Map<String, String> row, String result, long[] timings) throws IOException {
+        appendRun(index, row, result, timings);
+    }
+
+    /*
+     * @param index - the combination index
+     * @return - true if the run is in the log
+     */
+    public synchronized boolean contains(long index) {
+        return records.containsKey(index);
+    }
+
+    /*
+     * @return - the number of runs in the log, counting runs logged more than once once
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /*
+     * @return - the question texts in the order they were first logged
+     */
+    public synchronized List<String> getQuestions() {
+        return getColumnNames();
+    }
+
+    /*
+     * @return - the records of every run in the log
+     */
+    public synchronized BitSet all() {
+        BitSet all = new BitSet();
+        all.set(0, size);
+        all.andNot(replaced);
+        return all;
+    }
+
+    /*
+     * @param question - the question text
+     * @param answer - the printed answer
+     * @return - the records of the runs that gave the answer to the question, which can be combined with
+     * BitSet.and and BitSet.or and read with read()
+     */
+    public synchronized BitSet withAnswer(String question, String answer) {
+        int q = findColumn(question);
+        int v = findValue(answer);
+        BitSet found = q < 0 || v < 0 ? null : answerIndex.get(key(q, v));
+        return found == null ? new BitSet() : without(found);
+    }
+
+    /*
+     * @param result - the result, such as "Success!"
+     * @return - the records of the runs with the result
+     */
+    public synchronized BitSet withResult(String result) {
+        int v = findValue(result);
+        BitSet found = v < 0 ? null : resultIndex.get(v);
+        return found == null ? new BitSet() : without(found);
+    }
+
+    /*
+     * @return - the records of the runs whose result starts with the given text, such as "Failure"
+     */
+    public synchronized BitSet withResultPrefix(String prefix) {
+        BitSet found = new BitSet();
+        for (Map.Entry<Integer, BitSet> entry : resultIndex.entrySet()) {
+            if (getValue(entry.getKey()).startsWith(prefix)) {
+                found.or(entry.getValue());
+            }
+        }
+        return without(found);
+    }
+
+    /*
+     * Reads a run back from the file
+     * @param record - the record number, from all(), withAnswer() or withResult()
+     * @return - the Entry of the run
+     */
+    public synchronized Entry read(int record) throws IOException {
+        if (record < 0 || record >= size) {
+            throw new IllegalArgumentException("Record " + record + " is not in the run log");
+        }
+        return readRun(offsets[record]);
+    }
+
+    /*
+     * Indexes a run record
+     */
+    protected void indexRun(long offset, long index, int result, int[] answers) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        int record = size++;
+        offsets[record] = offset;
+        Integer previous = records.put(index, record);
+        if (previous != null) {
+            replaced.set(previous);
+        }
+        for (int i = 0; i < answers.length; i += 2) {
+            bits(answerIndex, key(answers[i], answers[i + 1])).set(record);
+        }
+        bits(resultIndex, result).set(record);
+    }
+
+    /*
+     * @return - a copy of the records without the replaced ones
+     */
+    private BitSet without(BitSet found) {
+        BitSet copy = (BitSet) found.clone();
+        copy.andNot(replaced);
+        return copy;
+    }
+
+    /*
+     * @return - the answer index key of an answer to a question
+     */
+    private static long key(int question, int value) {
+        return ((long) question << 32) | value;
+    }
+
+    /*
+     * @return - the records under a key of an index, added if there are none yet
+     */
+    private static <K> BitSet bits(Map<K, BitSet> index, K key) {
+        BitSet bits = index.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            index.put(key, bits);
+        }
+        return bits;
+    }
+}
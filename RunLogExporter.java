@@ -0,0 +1,119 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/*
+ * The RunLogExporter class writes the runs in a RunLog, or a filtered selection of them, to an Excel report
+ * on demand. Rows are ordered by combination index and laid out like a sweep's output sheet: the questions
+ * in the order they were first logged, then "Results", the phase timing columns if any run was timed, and
+ * the combination index of each run in a final "Run" column since a filtered report skips runs. The log is
+ * only read, so the log of a sweep that is still running, or a checkpoint, which has the same format, can be
+ * exported.
+ */
+public class RunLogExporter {
+    public static final String RUN_COLUMN = "Run";
+
+    /*
+     * Writes runs from a log to a new workbook
+     * @param log - the RunLog to read
+     * @param records - the records to write, from RunLog.all(), withAnswer() or withResult()
+     * @param path - the path of the .xlsx file to write
+     * @param sheetName - the name of the sheet to write to
+     * @return - the number of runs written
+     */
+    public static int export(RunLog log, BitSet records, String path, String sheetName) throws IOException {
+        TreeMap<Long, RunLog.Entry> runs = new TreeMap<Long, RunLog.Entry>();
+        boolean timed = false;
+        for (int r = records.nextSetBit(0); r >= 0; r = records.nextSetBit(r + 1)) {
+            RunLog.Entry entry = log.read(r);
+            runs.put(entry.getIndex(), entry);
+            timed |= entry.getTimings() != null;
+        }
+
+        List<String> questions = log.getQuestions();
+        List<String> order = new ArrayList<String>(questions);
+        order.add("Results");
+        if (timed) {
+            order.addAll(Arrays.asList(LatencyRecorder.getColumnNames()));
+        }
+        order.add(RUN_COLUMN);
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet(sheetName);
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < order.size(); c++) {
+                header.createCell(c).setCellValue(order.get(c));
+            }
+
+            int rowNum = 0;
+            for (RunLog.Entry entry : runs.values()) {
+                Row row = sheet.createRow(++rowNum);
+                for (int c = 0; c < questions.size(); c++) {
+                    String value = entry.getRow().get(questions.get(c));
+                    if (value != null) {
+                        row.createCell(c).setCellValue(value);
+                    }
+                }
+                row.createCell(questions.size()).setCellValue(entry.getResult());
+                if (entry.getTimings() != null) {
+                    LatencyRecorder.printTimings(row, questions.size() + 1, entry.getTimings());
+                }
+                row.createCell(order.size() - 1).setCellValue(entry.getIndex());
+            }
+
+            FileOutputStream output = new FileOutputStream(path);
+            try {
+                workbook.write(output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            workbook.dispose();
+        }
+        return runs.size();
+    }
+
+    /*
+     * Exports a run log from the command line
+     * @param args - the run log or checkpoint path, the output .xlsx path, the output sheet name, then any filters: a
+     * "question=answer" pair keeps the runs that gave the answer, "Results=result" keeps the runs with the
+     * result and "Results^=prefix" keeps the runs whose result starts with the prefix
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: RunLogExporter <run log | checkpoint> <output.xlsx> <sheet name> [question=answer | "
+                    + "Results=result | Results^=prefix]...");
+            System.exit(2);
+        }
+
+        RunLog log = RunLog.readOnly(args[0]);
+        try {
+            BitSet records = log.all();
+            for (int i = 3; i < args.length; i++) {
+                int split = args[i].indexOf('=');
+                if (split < 0) {
+                    throw new IllegalArgumentException("Filters are question=answer: " + args[i]);
+                }
+                String name = args[i].substring(0, split);
+                String value = args[i].substring(split + 1);
+                if (name.equals("Results^")) {
+                    records.and(log.withResultPrefix(value));
+                } else if (name.equals("Results")) {
+                    records.and(log.withResult(value));
+                } else {
+                    records.and(log.withAnswer(name, value));
+                }
+            }
+            int written = export(log, records, args[1], args[2]);
+            System.out.println("Exported " + written + " of " + log.size() + " runs to " + args[1]);
+        } finally {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package apptesting;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/*
+ * The RunSupervisor class makes the runs of a session under a Watchdog. A run that times out or loses its
+ * browser is counted as a failed attempt, its browser is replaced and it is tried again until the Watchdog's
+ * retries are used up, when it is recorded as "Timeout" or "Error". Browsers that still work are replaced
+ * once the Watchdog says they should be recycled, which is checked while the app page is still open. Each
+ * session has its own RunSupervisor, since it counts the runs made on the session's current browser.
+ */
+public class RunSupervisor {
+    private Watchdog watchdog;
+    private SweepMetrics metrics;
+    private int runsOnDriver = 0;
+    private boolean recycle = false;
+
+    /*
+     * Constructs a new RunSupervisor
+     * @param watchdog - the Watchdog supervising each attempt
+     */
+    public RunSupervisor(Watchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /*
+     * Sets the metrics failed attempts are counted in
+     * @param metrics - the SweepMetrics to use, or null for none
+     */
+    public void setMetrics(SweepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /*
+     * Makes a run, retrying it on a new browser while it fails
+     * @param session - the Session making the run
+     */
+    public void run(final Session session) {
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            recycle = false;
+            try {
+                watchdog.call(new Callable<Void>() {
+                    public Void call() {
+                        session.attempt();
+                        return null;
+                    }
+                }, session.getDriver());
+                session.succeeded();
+                break;
+            } catch (WebDriverException e) {
+                if (metrics != null) {
+                    metrics.attemptFailed();
+                }
+                replaceDriver(session);
+                session.discard();
+                //An interrupted sweep is being stopped, so the run is not tried again
+                if (attempt >= watchdog.getRetries() || Thread.currentThread().isInterrupted()) {
+                    session.fail(e instanceof org.openqa.selenium.TimeoutException ? "Timeout" : "Error",
+                            TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                    break;
+                }
+            }
+        }
+        runsOnDriver++;
+        if (recycle) {
+            replaceDriver(session);
+        }
+    }
+
+    /*
+     * Decides whether the browser is replaced once the run is over. Called by the session at the end of
+     * each attempt while the app page is still open, since its JavaScript heap is what is measured.
+     * @param driver - the WebDriver on the app page
+     */
+    public void runEnding(WebDriver driver) {
+        recycle = watchdog.shouldRecycle(driver, runsOnDriver + 1);
+    }
+
+    /*
+     * Gives the session a new browser in place of its current one
+     */
+    private void replaceDriver(Session session) {
+        session.setDriver(watchdog.replace(session.getDriver()));
+        runsOnDriver = 0;
+    }
+
+    /*
+     * The Session interface is the side of a session a RunSupervisor drives
+     */
+    public interface Session {
+        /*
+         * Makes one attempt at the run, on the Watchdog's thread
+         */
+        void attempt();
+
+        /*
+         * Called when an attempt finished without failing
+         */
+        void succeeded();
+
+        /*
+         * @return - the WebDriver the session currently uses
+         */
+        WebDriver getDriver();
+
+        /*
+         * Points the session at a new browser
+         * @param driver - the WebDriver replacing the current one
+         */
+        void setDriver(WebDriver driver);
+
+        /*
+         * Forgets everything about an attempt that failed
+         */
+        void discard();
+
+        /*
+         * Records a run whose attempts all failed
+         * @param result - the result to record as a String
+         * @param micros - the time spent on the last attempt in microseconds
+         */
+        void fail(String result, long micros);
+    }
+}
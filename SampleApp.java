@@ -1,41 +1,91 @@
 package apptesting;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.StaleElementReferenceException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 
 /*
- * The App class controls the test runs of the AfterPattern app. It reads and prints data
+ * The SampleApp class controls the test runs of the AfterPattern app. It reads and prints data
  * to an Excel sheet. The user can change the testing conditions by manipulating the Excel sheet.
  * It can also adaptively add new questions it encounters even if not provided by the user initially.
  * Users can set how many iterations of options they want to test and whether they want to test
- * options randomly, sequentially, or always select the first option. The App class interacts
- * with the AfterPattern app through the Selenium API.
+ * options randomly, sequentially, or always select the first option. The SampleApp class interacts
+ * with the AfterPattern app through the Selenium API. Finished runs are kept track of and printed by
+ * a RunBook, and runs made under a Watchdog are retried by a RunSupervisor.
  */
 public class SampleApp {
+    private static final By CONTINUE = By.className("btn-primary");
+
     private WebDriver driver;
-    private String xpath;
-    private XSSFSheet sheet;
+    private By appLink;
+    private Sheet sheet;
+    private StreamingResults output;
+    private int resultColumn = -1;
+    private String lastResult;
+    private Checkpoint checkpoint;
+    private HashMap<Integer, String> columnNames = new HashMap<Integer, String>();
     private String originalURL;
     private HashMap<String, Question> questions = new HashMap<String, Question>();
     private HashMap<String, Integer> responses = new HashMap<String, Integer>();
     private ArrayList<Question> testQuestions = new ArrayList<Question>();
-    private ArrayList<String> results = new ArrayList<String>();
+    private HashSet<String> exhaustiveQuestions = new HashSet<String>();
+    private int strength = 0;
+    private int pagesVisited = 0;
+    private PageSnapshot page;
+    private TransitionDetector transitions;
+    private QuestionSchema schema;
+    private HashSet<String> checkedQuestions = new HashSet<String>();
+    private boolean batch = false;
+    private ArrayList<Answer> pending = new ArrayList<Answer>();
+    private ArrayList<Question> pendingQuestions = new ArrayList<Question>();
+    private ArrayList<Integer> pendingOptions = new ArrayList<Integer>();
+    private LatencyRecorder timings = new LatencyRecorder();
+    private boolean timingColumns = false;
+    private long[] lastTimings;
+    private SweepMetrics metrics;
+    private Sampler sampler = new Sampler(System.nanoTime());
+    private String sampling = SampledCombinations.UNIFORM;
+    private long budget = 0;
+    private Shard shard;
+    private long firstRun = 0;
+    private FlowPruner pruner;
+    private StringBuilder flow = new StringBuilder();
+    private String lastFlow;
+    private boolean reuseTab = false;
+    private String appUrl;
+    private RunSupervisor supervisor;
+    private ResultCheck resultCheck = new ResultCheck();
+    private RunLog runLog;
+    private ResultWriter writer;
+    private int writerQueue = 0;
+    private RunBook book = new RunBook();
 
     /*
      * Constructs a new App object with the given WebDriver and app name
      * @param driver - the Selenium WebDriver corresponding to the window the AfterPattern page is in
      * @param appName - the name of the AfterPattern app as a String
      */
-    public App(WebDriver driver, String appName) {
+    public SampleApp(WebDriver driver, String appName) {
         this.driver = driver;
-        xpath = "//h4[text()='" + appName + "']/../../..//a";
+        appLink = By.xpath("//h4[text()='" + appName + "']/../../..//a");
+        transitions = new TransitionDetector(driver, 30000, 50);
+    }
+
+    /*
+     * Sets the schema of questions seen by earlier sweeps. Must be called before importFromExcel or
+     * importQuestions, which create the questions in the schema that are not defined.
+     * @param schema - the QuestionSchema to load from and record to
+     */
+    public void useSchema(QuestionSchema schema) {
+        this.schema = schema;
     }
 
     /*
@@ -44,133 +94,964 @@ public class SampleApp {
      * @param sheetName - the name of the Excel sheet to retrieve from as a String
      */
     public void importFromExcel(XSSFWorkbook workbook, String sheetName) {
-        sheet = workbook.getSheet(sheetName);
+        importFromExcel(workbook, workbook.getSheet(sheetName));
+    }
+
+    /*
+     * Gets question info from excel spreadsheet and sets up the given output sheet, which does not
+     * have to belong to the same workbook (used by parallel sessions printing to a scratch sheet)
+     * @param workbook - the XSSFWorkbook object containing the "Questions" sheet
+     * @param outputSheet - the Sheet object to print to
+     */
+    public void importFromExcel(XSSFWorkbook workbook, Sheet outputSheet) {
+        importQuestions(QuestionDefinitions.fromWorkbook(workbook), outputSheet);
+    }
+
+    /*
+     * Gets question info from excel spreadsheet and prints to the given streaming output instead of
+     * an in-memory sheet. Each run's row, including its result, is complete as soon as the run ends.
+     * @param workbook - the XSSFWorkbook object containing the "Questions" sheet
+     * @param output - the StreamingResults object to print to
+     */
+    public void importFromExcel(XSSFWorkbook workbook, StreamingResults output) {
+        importQuestions(QuestionDefinitions.fromWorkbook(workbook), output);
+    }
+
+    /*
+     * Creates the defined questions and sets up the given output sheet
+     * @param definitions - the QuestionDefinitions read from the "Questions" sheet or a text file
+     * @param outputSheet - the Sheet object to print to
+     */
+    public void importQuestions(QuestionDefinitions definitions, Sheet outputSheet) {
+        sheet = outputSheet;
         sheet.createRow(0);
-        XSSFSheet inputSheet = workbook.getSheet("Questions");
-        int size = inputSheet.getLastRowNum() - inputSheet.getFirstRowNum();
-
-        //Iterate over rows in input sheet and store values in arrays
-        DataFormatter df = new DataFormatter();
-        for (int i = 0; i < size; i++) {
-            Row inputRow = inputSheet.getRow(i + 1);
-            String text = inputRow.getCell(0).getStringCellValue();
-            String mode = inputRow.getCell(1).getStringCellValue();
-            String type = inputRow.getCell(2).getStringCellValue();
-            int numOptions = (int) inputRow.getCell(3).getNumericCellValue();
-            String defaultResponse = df.formatCellValue(inputRow.getCell(4));
+        if (output == null) {
+            writer = new ResultWriter(sheet);
+        }
+        book.setWriter(writer, output == null);
+        importQuestions(definitions);
+    }
+
+    /*
+     * Creates the defined questions without an output, for a caller such as ParallelRunner that makes runs
+     * with runCombination and prints each finished row itself. Nothing is printed or kept between runs.
+     * @param definitions - the QuestionDefinitions read from the "Questions" sheet or a text file
+     */
+    public void importQuestions(QuestionDefinitions definitions) {
+        for (QuestionDefinitions.Definition definition : definitions.getDefinitions()) {
+            String text = definition.getText();
+
+            //Optional sixth column marks questions that must be tested exhaustively in covering array mode
+            if (definition.isExhaustive()) {
+                exhaustiveQuestions.add(text);
+            }
 
             //Create a question without a custom default response if the default response value is -1,
             //otherwise create a question with a custom default response
-            if (defaultResponse.equals("-1")) {
-                createQuestion(type, text, mode, numOptions);
+            if (definition.getDefaultResponse().equals("-1")) {
+                createQuestion(definition.getType(), text, definition.getMode(), definition.getNumOptions());
             } else {
-                createQuestion(type, text, mode, numOptions, defaultResponse);
+                createQuestion(definition.getType(), text, definition.getMode(), definition.getNumOptions(),
+                        definition.getDefaultResponse());
             }
+
+            //Optional seventh column marks questions whose UI needs real user gestures in batch mode
+            questions.get(text).setNativeInput(definition.isNativeInput());
+        }
+
+        //Create questions discovered by earlier sweeps so they do not have to be detected again
+        if (schema != null) {
+            for (String text : schema.getTexts()) {
+                if (!questions.containsKey(text)) {
+                    String type = schema.getType(text);
+                    createQuestion(type, text, "default", countOptions(type, schema.getOptions(text).size()));
+                }
+            }
+        }
+    }
+
+    /*
+     * Creates the defined questions and prints to the given streaming output instead of an in-memory sheet
+     * @param definitions - the QuestionDefinitions read from the "Questions" sheet or a text file
+     * @param output - the StreamingResults object to print to
+     */
+    public void importQuestions(QuestionDefinitions definitions, StreamingResults output) {
+        this.output = output;
+        writer = new ResultWriter(output);
+        importQuestions(definitions, output.getSheet());
+        resultColumn = questions.size();
+        writer.setResultColumn(resultColumn, timingColumns);
+        writer.setColumnName(resultColumn, "Results");
+        if (timingColumns) {
+            String[] names = LatencyRecorder.getColumnNames();
+            for (int i = 0; i < names.length; i++) {
+                writer.setColumnName(resultColumn + 1 + i, names[i]);
+            }
+        }
+    }
+
+    /*
+     * Sets how many finished runs can wait to be printed by a writer thread. With a queue, test() and
+     * testTree() print on their own thread and only wait for it when the queue is full; with none, each run
+     * is printed before the next starts.
+     * @param capacity - the number of runs that can wait, or 0 to print on the driving thread
+     */
+    public void setWriterQueue(int capacity) {
+        writerQueue = capacity;
+    }
+
+    /*
+     * Starts the writer thread, if a queue is set
+     */
+    private void startWriter() {
+        if (writerQueue > 0) {
+            writer.start(writerQueue);
+        }
+    }
+
+    /*
+     * Waits for the writer thread to print every finished run and stops it, then prints the results to an
+     * in-memory sheet
+     */
+    private void finishWriting() {
+        writer.close();
+        if (output == null) {
+            book.printResults(sheet, timingColumns);
         }
-        sheet.createRow(1);
+    }
+
+    /*
+     * Sets whether the time spent in each phase of a run is printed in extra columns after the results.
+     * Must be called before importFromExcel when printing to streaming output, which reserves the columns.
+     * @param timingColumns - whether to print phase times
+     */
+    public void setTimingColumns(boolean timingColumns) {
+        this.timingColumns = timingColumns;
+    }
+
+    /*
+     * @return - the latency histograms of each phase of the runs so far
+     */
+    public LatencyRecorder getTimings() {
+        return timings;
+    }
+
+    /*
+     * @return - the time spent in each phase of the last completed run and its total in microseconds,
+     * in LatencyRecorder.PHASES order
+     */
+    public long[] getLastTimings() {
+        return lastTimings;
     }
 
     /*
      * Runs app and selects response options for each run. The number of runs is equal to the product of
-     * the number of options for each question with testing mode "test"
+     * the number of options for each question with testing mode "test", or the size of the covering array
+     * if a strength has been set, or the budget if one has been set. With a shard set only the shard's
+     * range of runs is made.
      */
     public void test() {
-        test(0);
-        printResults();
+        Combinations combinations = getCombinations();
+        firstRun = shard == null ? 0 : shard.getStart(combinations.size());
+        long end = shard == null ? combinations.size() : shard.getEnd(combinations.size());
+        if (metrics != null) {
+            metrics.setTotal(end - firstRun);
+            metrics.sessionStarted();
+        }
+        startWriter();
+        try {
+            for (long i = firstRun; i < end; i++) {
+                int[] options = combinations.combinationAt(i);
+                FlowPruner.Run inferred = pruner == null ? null : pruner.infer(options);
+                if (checkpoint != null && checkpoint.isDone(i)) {
+                    restoreRun(i);
+                    if (runLog != null && !runLog.contains(i)) {
+                        record(i);
+                    }
+                } else if (inferred != null) {
+                    printRun(inferred.getRow(), inferred.getResult());
+                    record(i);
+                } else {
+                    runCombination(i, options);
+                    record(i);
+                    if (pruner != null) {
+                        pruner.learn(options, lastFlow, lastResult, book.getFinishedRow());
+                    }
+                }
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.sessionEnded();
+            }
+            finishWriting();
+        }
     }
 
     /*
-     * Recursively runs app and sets response option for each run.
-     * @param i - the index of the current question on "test" mode being iterated over
+     * Sets the shard of the runs test() makes. Rows are printed in combination order from the shard's first
+     * run, and runs recorded in a checkpoint keep their combination index across the whole sweep.
+     * @param shard - the Shard to run, or null for every run
      */
-    private void test(int i) {
-        Question q = testQuestions.get(i);
-        int option = 0;
-        do {
-            responses.replace(q.getText(), option++);
-            if (i < testQuestions.size() - 1) {
-                test(i + 1);
-            } else {
-                runApp();
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    /*
+     * @return - the combination index of the run printed in the first row by the last test()
+     */
+    public long getFirstRun() {
+        return firstRun;
+    }
+
+    /*
+     * Sets flow-equivalence pruning. When pruning, test() learns which questions on "test" mode never change
+     * the labels seen or the final URL and infers the runs that only differ in those questions from a run that
+     * was executed, marking their result as inferred instead of running them. Must be called after importFromExcel.
+     * @param pruning - whether to prune flow-equivalent runs
+     */
+    public void setPruning(boolean pruning) {
+        pruner = pruning ? new FlowPruner(testQuestions) : null;
+    }
+
+    /*
+     * @return - the FlowPruner used by test(), or null if not pruning
+     */
+    public FlowPruner getPruner() {
+        return pruner;
+    }
+
+    /*
+     * @return - the question labels seen by the last completed run, one per line, followed by the URL it
+     * ended on without its query or fragment
+     */
+    public String getLastFlow() {
+        return lastFlow;
+    }
+
+    /*
+     * Runs app once for each of the given combinations, in order
+     * @param combinations - the combinations of options for the questions on "test" mode
+     */
+    public void test(Iterable<int[]> combinations) {
+        for (int[] options : combinations) {
+            runCombination(options);
+        }
+    }
+
+    /*
+     * Runs app once with the given options for the questions on "test" mode, choosing the answers of
+     * questions on "random" mode for the given run index so the run can be replayed
+     * @param index - the run index
+     * @param options - the option index for each question in getTestQuestions() order
+     * @return - the result of the run as a String
+     */
+    public String runCombination(long index, final int[] options) {
+        sampler.setRun(index);
+        if (supervisor == null) {
+            return runCombination(options);
+        }
+
+        //Rows are held back until the attempt succeeds, so an abandoned attempt prints nothing
+        supervisor.run(new RunSupervisor.Session() {
+            public void attempt() {
+                book.hold();
+                runCombination(options);
             }
 
-            if (q.isLastOption()) {
-                break;
+            public void succeeded() {
+                book.release();
+            }
+
+            public WebDriver getDriver() {
+                return driver;
+            }
+
+            public void setDriver(WebDriver driver) {
+                replaceDriver(driver);
+            }
+
+            public void discard() {
+                discardRun();
+            }
+
+            public void fail(String result, long micros) {
+                printFailure(result, micros);
+            }
+        });
+        return lastResult;
+    }
+
+    /*
+     * Sets the Watchdog supervising runs made by runCombination with a run index, including every run of
+     * test(). Runs that time out or lose their browser are retried on a new browser and, if they keep
+     * failing, printed with "Timeout" or "Error" as their result.
+     * @param watchdog - the Watchdog to use, or null to run unsupervised
+     */
+    public void setWatchdog(Watchdog watchdog) {
+        if (watchdog == null) {
+            supervisor = null;
+        } else {
+            supervisor = new RunSupervisor(watchdog);
+            supervisor.setMetrics(metrics);
+        }
+    }
+
+    /*
+     * Sets the run log every run made by test() is appended to, including restored and inferred runs not
+     * yet in it
+     * @param runLog - the RunLog to use, or null for none
+     */
+    public void setRunLog(RunLog runLog) {
+        this.runLog = runLog;
+    }
+
+    /*
+     * Sets the success and failure conditions checked on the page each run ends on
+     * @param resultCheck - the ResultCheck to use
+     */
+    public void setResultCheck(ResultCheck resultCheck) {
+        this.resultCheck = resultCheck;
+    }
+
+    /*
+     * @return - the WebDriver currently used, which changes when the Watchdog replaces the browser
+     */
+    public WebDriver getDriver() {
+        return driver;
+    }
+
+    /*
+     * Points the questions and transition detector at a new browser
+     * @param driver - the WebDriver replacing the current one
+     */
+    private void replaceDriver(WebDriver driver) {
+        this.driver = driver;
+        transitions.setDriver(driver);
+        for (Question q : questions.values()) {
+            q.setDriver(driver);
+        }
+    }
+
+    /*
+     * Forgets everything about a run that was abandoned, including the answers it printed
+     */
+    private void discardRun() {
+        page = null;
+        clearPending();
+        flow.setLength(0);
+        timings.cancelRun();
+        book.discard();
+    }
+
+    /*
+     * Prints a run that could not be completed
+     * @param result - the result to print as a String
+     * @param micros - the time spent on the run in microseconds
+     */
+    private void printFailure(String result, long micros) {
+        lastResult = result;
+        lastTimings = null;
+        lastFlow = null;
+        if (metrics != null) {
+            metrics.runFinished(micros, false);
+        }
+        book.finish(lastResult, lastTimings);
+    }
+
+    /*
+     * Runs app once with the given options for the questions on "test" mode
+     * @param options - the option index for each question in getTestQuestions() order
+     * @return - the result of the run as a String
+     */
+    public String runCombination(int[] options) {
+        for (int i = 0; i < options.length; i++) {
+            responses.replace(testQuestions.get(i).getText(), options[i]);
+        }
+        runApp();
+        return lastResult;
+    }
+
+    /*
+     * Sets the metrics each run is counted in. The caller running the sweep sets the total and sessions,
+     * except for test(), which sets them itself.
+     * @param metrics - the SweepMetrics to count runs in
+     */
+    public void setMetrics(SweepMetrics metrics) {
+        this.metrics = metrics;
+        if (supervisor != null) {
+            supervisor.setMetrics(metrics);
+        }
+    }
+
+    /*
+     * Resumes from the given checkpoint: questions discovered by an earlier process are created again, runs
+     * already in the checkpoint are printed from it instead of being run, and new runs are added to it
+     * @param checkpoint - the Checkpoint to resume from and record to
+     */
+    public void resume(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        try {
+            for (String[] question : checkpoint.getQuestions()) {
+                if (!questions.containsKey(question[0])) {
+                    createQuestion(question[1], question[0], "default", 0);
+                }
+            }
+            checkpoint.setPlan(getPlan());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * @return - a description of the runs to make, which changes if the questions on "test" mode,
+     * their number of options, the exhaustive questions or the strength change
+     */
+    private String getPlan() {
+        StringBuilder plan = new StringBuilder("strength=" + strength);
+        if (budget > 0) {
+            plan.append(";sample=").append(sampling).append(":").append(budget).append(":").append(sampler.getSeed());
+        }
+        for (Question q : testQuestions) {
+            plan.append(";").append(q.getText()).append("=").append(q.getNumOptions());
+            if (exhaustiveQuestions.contains(q.getText())) {
+                plan.append("*");
+            }
+        }
+        return plan.toString();
+    }
+
+    /*
+     * Adds the run that just ended to the checkpoint, if there is one
+     * @param index - the combination index of the run
+     */
+    private void record(long index) {
+        try {
+            if (checkpoint != null && !checkpoint.isDone(index)) {
+                checkpoint.record(index, book.getFinishedRow(), lastResult);
+            }
+            if (runLog != null) {
+                runLog.record(index, book.getFinishedRow(), lastResult, lastTimings);
             }
-        } while (option < q.getNumOptions());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Prints a run from the checkpoint as if it had just been run
+     * @param index - the combination index of the run
+     */
+    private void restoreRun(long index) {
+        try {
+            printRun(checkpoint.getRow(index), checkpoint.getResult(index));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Prints a run that was not executed by this process, restored from a checkpoint or inferred
+     * @param cells - the printed answers, by question text
+     * @param result - the result of the run as a String
+     */
+    private void printRun(Map<String, String> cells, String result) {
+        lastResult = result;
+        lastTimings = null;
+        if (metrics != null) {
+            metrics.runRestored();
+        }
+        book.finish(cells, result);
+    }
+
+    /*
+     * @return - the answers printed in the last completed row, by question text. Without an output the
+     * caller prints the run from it.
+     */
+    public Map<String, String> getFinishedRow() {
+        return book.getFinishedRow();
+    }
+
+    /*
+     * @return - the result of the last completed run as a String
+     */
+    public String getLastResult() {
+        return lastResult;
+    }
+
+    /*
+     * Sets the covering array strength. With strength t greater than 0, only enough runs to cover every
+     * combination of options of any t questions on "test" mode are made (2 for pairwise), except for
+     * questions marked exhaustive on the "Questions" sheet. With strength 0 every combination is run.
+     * @param strength - the covering array strength as an integer
+     */
+    public void setStrength(int strength) {
+        this.strength = strength;
+    }
+
+    /*
+     * Sets the Sampler every random choice is made with. Runs are replayed exactly by using the same seed.
+     * @param sampler - the Sampler of this session
+     */
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+        for (Question q : questions.values()) {
+            q.setSampler(sampler);
+        }
+    }
+
+    /*
+     * @return - the Sampler every random choice is made with
+     */
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /*
+     * Sets a run budget. With a budget greater than 0 only that many runs are sampled from the runs that
+     * would otherwise be made: "uniform" picks them without replacement, "stratified" builds runs that use
+     * each option of each question on "test" mode evenly (with a strength set, the covering array is
+     * sampled uniformly instead).
+     * @param mode - "uniform" or "stratified"
+     * @param budget - the number of runs to make, or 0 for all of them
+     */
+    public void setSampling(String mode, long budget) {
+        this.sampling = mode;
+        this.budget = budget;
+    }
+
+    /*
+     * @return - the runs to make for the questions on "test" mode under the current strength and budget
+     */
+    public Combinations getCombinations() {
+        Combinations combinations;
+        if (strength <= 0) {
+            combinations = new CombinationEnumerator(testQuestions);
+        } else {
+            boolean[] exhaustive = new boolean[testQuestions.size()];
+            for (int i = 0; i < exhaustive.length; i++) {
+                exhaustive[i] = exhaustiveQuestions.contains(testQuestions.get(i).getText());
+            }
+            combinations = new CoveringArray(testQuestions, strength, exhaustive);
+        }
+
+        if (budget <= 0) {
+            return combinations;
+        } else if (sampling.equals(SampledCombinations.STRATIFIED) && strength <= 0) {
+            return SampledCombinations.stratified(((CombinationEnumerator) combinations).getRadices(), budget, sampler);
+        }
+        return SampledCombinations.uniform(combinations, budget, sampler);
+    }
+
+    /*
+     * @return - the questions on "test" mode in the order they were imported
+     */
+    public List<Question> getTestQuestions() {
+        return Collections.unmodifiableList(testQuestions);
+    }
+
+    /*
+     * @return - the Sheet being printed to
+     */
+    public Sheet getSheet() {
+        return sheet;
     }
 
     /*
      * Runs app from AfterPattern project folder
      */
     public void runApp() {
-        driver.findElement(By.xpath(xpath)).click();
+        openApp();
+        flow.setLength(0);
 
-        //Switch tab focus
-        String current = driver.getWindowHandle();
-        Set<String> handles = driver.getWindowHandles();
-        for (String s : handles) {
-            if (!s.equals(current)) {
-                driver.switchTo().window(s);
+        //Call test method of next Question and create new Question if necessary
+        int i = 0;
+        while (!endCondition()) {
+            PageSnapshot.Field field = nextQuestion(i);
+            String text = field.getText();
+            flow.append(text).append('\n');
+
+            //Call test method
+            answer(questions.get(text), responses.get(text), field);
+            i = advance(i);
+        }
+        end();
+    }
+
+    /*
+     * Sets batch mode. In batch mode runApp() chooses the answers for every question on a page first and
+     * applies them all in a single script call before continuing, except for questions marked as needing
+     * real user gestures, which are still clicked one at a time.
+     * @param batch - whether to apply answers in batches
+     */
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    /*
+     * Answers a question, right away or by adding it to the current page's batch
+     * @param q - the Question to answer
+     * @param option - the integer index of the option to select (0 index)
+     * @param field - the question as read by a PageSnapshot of the current page
+     */
+    private void answer(Question q, int option, PageSnapshot.Field field) {
+        if (!batch) {
+            test(q, option, field);
+        } else if (q.isNativeInput()) {
+            //Keep answers in page order
+            applyPending();
+            test(q, option, field);
+        } else {
+            long start = timings.start();
+            pending.add(q.choose(option, field));
+            pendingQuestions.add(q);
+            pendingOptions.add(option);
+            timings.stop(LatencyRecorder.ANSWER, q.getText(), start);
+        }
+    }
+
+    /*
+     * Answers a question right away, timing it
+     * @param q - the Question to answer
+     * @param option - the integer index of the option to select (0 index)
+     * @param field - the question as read by a PageSnapshot of the current page
+     */
+    private void test(Question q, int option, PageSnapshot.Field field) {
+        long start = timings.start();
+        Answer answer = q.choose(option, field);
+        try {
+            answer.apply(driver);
+        } catch (StaleElementReferenceException e) {
+            //An earlier answer re-rendered the page, so read it again and finish the answer from the new elements
+            page = null;
+            q.choose(option, reread(field.getText())).continuing(answer).apply(driver);
+        }
+        timings.stop(LatencyRecorder.ANSWER, q.getText(), start);
+    }
+
+    /*
+     * Applies the answers batched for the current page in a single script call
+     */
+    private void applyPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = timings.start();
+        try {
+            Answer.applyAll(driver, pending);
+        } catch (StaleElementReferenceException e) {
+            //The script is not run when an element has gone stale, so only the stale answers are chosen again
+            List<Answer> fresh = new ArrayList<Answer>();
+            page = null;
+            for (int k = 0; k < pending.size(); k++) {
+                Question q = pendingQuestions.get(k);
+                Answer answer = pending.get(k);
+                fresh.add(answer.isStale() ? q.choose(pendingOptions.get(k), reread(q.getText())) : answer);
             }
+            Answer.applyAll(driver, fresh);
         }
+        clearPending();
+        timings.stop(LatencyRecorder.APPLY, start);
+    }
 
-        originalURL = driver.getCurrentUrl();
+    /*
+     * Forgets the answers batched for the current page
+     */
+    private void clearPending() {
+        pending.clear();
+        pendingQuestions.clear();
+        pendingOptions.clear();
+    }
 
-        //Call test method of next Question and create new Question if necessary
+    /*
+     * Finds a question again after the page's elements went stale, reading the page if it has not been
+     * read since
+     * @param text - the question text as a String
+     * @return - the question with the given text on the new page
+     */
+    private PageSnapshot.Field reread(String text) {
+        if (page == null) {
+            readPage();
+        }
+        PageSnapshot.Field field = page.getField(text);
+        if (field == null) {
+            throw new NoSuchElementException("Question left the page when it re-rendered: " + text);
+        }
+        return field;
+    }
+
+    /*
+     * Sets whether runs reuse one tab. When reusing the tab, the app link's URL is read from the project page
+     * once and every run starts by going straight to it in the current tab, instead of clicking the link to
+     * open a new tab and closing that tab at the end of the run.
+     * @param reuseTab - whether to reuse one tab
+     */
+    public void setReuseTab(boolean reuseTab) {
+        this.reuseTab = reuseTab;
+    }
+
+    /*
+     * Sets how long to wait for a page transition before giving up
+     * @param millis - the timeout in milliseconds
+     */
+    public void setTransitionTimeout(long millis) {
+        transitions.setTimeout(millis);
+    }
+
+    /*
+     * @return - the number, mean and max latency of each kind of page transition so far
+     */
+    public String getTransitionReport() {
+        return transitions.getReport();
+    }
+
+    /*
+     * Runs app as a tree, depth first. Every time a question on "test" mode is reached the rest of the app is
+     * run once for each of its options, going back to the question's page through the browser history instead
+     * of restarting the app from the first page, so pages shared by consecutive runs are only loaded once.
+     * A question on "test" mode that is never reached on a path is not iterated over on that path.
+     */
+    public void testTree() {
+        if (metrics != null) {
+            metrics.sessionStarted();
+        }
+        startWriter();
+        try {
+            openApp();
+            explore(0, new ArrayList<Integer>());
+            closeApp();
+        } finally {
+            if (metrics != null) {
+                metrics.sessionEnded();
+            }
+            finishWriting();
+        }
+    }
+
+    /*
+     * Answers questions from the given position on the current page until the end of the app, branching on
+     * each question on "test" mode
+     * @param i - the position of the next question on the current page (0 index)
+     * @param pageAnswers - the options selected for the questions before position i on the current page
+     */
+    private void explore(int i, List<Integer> pageAnswers) {
+        while (!endCondition()) {
+            PageSnapshot.Field field = nextQuestion(i);
+            String text = field.getText();
+            Question q = questions.get(text);
+            if (!q.getMode().equals("test")) {
+                pageAnswers.add(responses.get(text));
+                test(q, responses.get(text), field);
+                i = advance(i);
+                if (i == 0) {
+                    pageAnswers = new ArrayList<Integer>();
+                }
+                continue;
+            }
+
+            //Branch point: remember what has been printed so far and how far into the app it is
+            Map<String, String> prefix = new LinkedHashMap<String, String>(book.getCurrent());
+            int pages = pagesVisited;
+            for (int option = 0; option < Math.max(1, q.getNumOptions()); option++) {
+                responses.replace(text, option);
+                if (option > 0) {
+                    book.getCurrent().putAll(prefix);
+                    if (returnTo(text, pagesVisited - pages + 2)) {
+                        for (int k = 0; k < i; k++) {
+                            PageSnapshot.Field previous = nextQuestion(k);
+                            test(questions.get(previous.getText()), pageAnswers.get(k), previous);
+                        }
+                    } else {
+                        replayTo(text);
+                    }
+                }
+
+                test(q, option, nextQuestion(i));
+                List<Integer> answers = new ArrayList<Integer>(pageAnswers);
+                answers.add(option);
+                int next = advance(i);
+                explore(next, next == 0 ? new ArrayList<Integer>() : answers);
+            }
+            return;
+        }
+        checkResult();
+        sampler.setRun(sampler.getRun() + 1);
+    }
+
+    /*
+     * Goes back through the browser history until the page containing the given question is shown
+     * @param text - the question text as a String
+     * @param maxSteps - the most pages to go back as an integer
+     * @return - true if the page was found
+     */
+    private boolean returnTo(String text, int maxSteps) {
+        page = null;
+        Runnable back = new Runnable() {
+            public void run() {
+                driver.navigate().back();
+            }
+        };
+        for (int step = 0; step < maxSteps; step++) {
+            String state = transitions.perform(back, "back");
+
+            //Going back into the app from the end page changes the URL before the page has rendered
+            if (state.equals(TransitionDetector.URL)) {
+                state = transitions.await("back");
+            }
+            if (state.equals(TransitionDetector.QUESTIONS) && PageSnapshot.take(driver).contains(text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /*
+     * Fallback when the history does not lead back to a question: closes the app and runs it again from the
+     * first page with the current responses until the page containing the given question is reached
+     * @param text - the question text as a String
+     */
+    private void replayTo(String text) {
+        closeApp();
+        openApp();
         int i = 0;
         while (!endCondition()) {
-            //Test if next question is in stored map of questions by question text
-            List<WebElement> page = driver.findElements(By.className("page-block__field-label"));
-            WebElement currentQuestion = page.get(i);
-            String text = currentQuestion.findElement(By.xpath(".//p")).getText();
-            if (!questions.containsKey(text)) {
-                createQuestion(currentQuestion);
+            PageSnapshot.Field field = nextQuestion(i);
+            String current = field.getText();
+            if (current.equals(text)) {
+                return;
             }
+            test(questions.get(current), responses.get(current), field);
+            i = advance(i);
+        }
+        throw new IllegalStateException("Question not reached on replay: " + text);
+    }
 
-            //Call test method
-            questions.get(text).test(responses.get(text), i);
+    /*
+     * Clicks the app link in the AfterPattern project folder and switches to the app tab, or goes
+     * straight to the app in the current tab when reusing it
+     */
+    private void openApp() {
+        long start = timings.start();
+        if (reuseTab) {
+            if (appUrl == null) {
+                appUrl = transitions.waitFor(appLink).getAttribute("href");
+            }
+            driver.get(appUrl);
+            timings.stop(LatencyRecorder.LINK, start);
+        } else {
+            transitions.waitFor(appLink).click();
+            timings.stop(LatencyRecorder.LINK, start);
 
-            //Click continue if last question on page
-            page = driver.findElements(By.className("page-block__field-label"));
-            if (i >= page.size() - 1) {
-                clickContinue();
-                i = 0;
-            } else {
-                i++;
+            //Switch tab focus
+            start = timings.start();
+            String current = driver.getWindowHandle();
+            Set<String> handles = driver.getWindowHandles();
+            for (String s : handles) {
+                if (!s.equals(current)) {
+                    driver.switchTo().window(s);
+                }
             }
+            timings.stop(LatencyRecorder.TAB, start);
         }
-        end();
+
+        start = timings.start();
+        String state = transitions.await("open");
+        timings.stop(LatencyRecorder.LOAD, start);
+        if (state.equals(TransitionDetector.TIMEOUT)) {
+            throw new org.openqa.selenium.TimeoutException("App did not load");
+        }
+        originalURL = driver.getCurrentUrl();
+        page = null;
     }
 
     /*
-     * Clicks continue button if the driver is on the last question on the page
-     * or if the next page has no questions on it
+     * Returns the question at the given position on the current page, reading the page with a single
+     * PageSnapshot when it is first needed and creating a new Question if it is not in the stored map
+     * @param i - the question's position on the page (0 index)
      */
-    public void clickContinue() {
-        //Initial click
-        driver.findElement(By.className("btn-primary")).click();
-        driver.findElement(By.xpath("//*[@class!='disabled' and @class='btn-primary']"));
+    private PageSnapshot.Field nextQuestion(int i) {
+        if (page == null) {
+            readPage();
+        }
+        PageSnapshot.Field field = page.getField(i);
+        if (!questions.containsKey(field.getText())) {
+            createQuestion(field);
+        }
+        if (schema != null && checkedQuestions.add(field.getText())) {
+            checkSchema(field);
+        }
+        return field;
+    }
+
+    /*
+     * Compares a question on the page with the schema, which records any change for its drift report
+     * @param field - the question as read by a PageSnapshot of the current page
+     */
+    private void checkSchema(PageSnapshot.Field field) {
+        try {
+            schema.check(field.getText(), field.getType(), field.getOptionTexts());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        //Further clicks if no questions are on the next page
-        driver.manage().timeouts().implicitlyWait(10, TimeUnit.MILLISECONDS);
-        List<WebElement> questionsOnPage = driver.findElements(By.className("page-block__field-label"));
+    /*
+     * Reads the current page with a single PageSnapshot, timing it
+     */
+    private void readPage() {
+        long start = timings.start();
+        page = PageSnapshot.take(driver);
+        timings.stop(LatencyRecorder.READ, start);
+    }
 
-        while (questionsOnPage.size() == 0) {
+    /*
+     * Clicks continue if the question at the given position is the last on the page
+     * @param i - the question's position on the page (0 index)
+     * @return - the position of the next question
+     */
+    private int advance(int i) {
+        //Read the page again before leaving it in case the answers revealed more questions
+        if (i >= page.size() - 1) {
+            applyPending();
+            readPage();
+        }
+        if (i >= page.size() - 1) {
+            clickContinue();
+            return 0;
+        }
+        return i + 1;
+    }
+
+    /*
+     * Clicks continue button if the driver is on the last question on the page
+     * or if the next page has no questions on it, waiting for each transition in the browser
+     */
+    public void clickContinue() {
+        //The page was just read, so its continue button does not have to be looked up again
+        WebElement button = page == null ? null : page.getContinueButton();
+        page = null;
+        long start = timings.start();
+        String state;
+        do {
+            pagesVisited++;
+            if (button == null) {
+                button = driver.findElement(CONTINUE);
+            }
             try {
-                driver.findElement(By.className("btn-primary")).click();
-                driver.findElement(By.className("btn-primary"));
-                driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
-                driver.findElement(By.xpath("//*[@class!='disabled' and @class='btn-primary']"));
-                driver.manage().timeouts().implicitlyWait(10, TimeUnit.MILLISECONDS);
-                questionsOnPage = driver.findElements(By.className("page-block__field-label"));
-            } catch (org.openqa.selenium.NoSuchElementException e) {
-                break;
+                state = transitions.click(button, "continue");
+            } catch (StaleElementReferenceException e) {
+                state = transitions.click(driver.findElement(CONTINUE), "continue");
             }
+            button = null;
+        } while (state.equals(TransitionDetector.EMPTY));
+        timings.stop(LatencyRecorder.CONTINUE, start);
+
+        if (state.equals(TransitionDetector.TIMEOUT)) {
+            throw new org.openqa.selenium.TimeoutException("No page transition after clicking continue");
         }
-        driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
     }
 
+
     /*
      * Creates new Question object without custom default response
      * @param type - the type of the question created as a String
@@ -180,24 +1061,27 @@ public class SampleApp {
      */
     private void createQuestion(String type, String text, String mode, int numOptions) {
         Question q;
+        int column = nextColumn();
         switch (type) {
             case "dropdown":
-                q = new DropdownQuestion(driver, sheet, text, questions.size(), mode, numOptions);
+                q = new DropdownQuestion(driver, text, mode, numOptions);
                 break;
             case "radio":
-                q = new RadioQuestion(driver, sheet,  text, questions.size(), mode, numOptions);
+                q = new RadioQuestion(driver, text, mode, numOptions);
                 break;
             case "boolean":
-                q = new BooleanQuestion(driver, sheet, text, questions.size(), mode, numOptions);
+                q = new BooleanQuestion(driver, text, mode, numOptions);
                 break;
             case "checkbox":
-                q = new CheckboxQuestion(driver, sheet, text, questions.size(), mode, numOptions);
+                q = new CheckboxQuestion(driver, text, mode, numOptions);
                 break;
             default:
-                q = new TextQuestion(driver, sheet, text, questions.size(), mode, numOptions);
+                q = new TextQuestion(driver, text, mode, numOptions);
         }
 
-        sheet.getRow(0).createCell(questions.size()).setCellValue(text);
+        setColumnName(column, text);
+        q.setSampler(sampler);
+        q.setRow(book.getCurrent());
         questions.put(text, q);
         responses.put(text, 0);
         if (mode.equals("test")) {
@@ -215,24 +1099,27 @@ public class SampleApp {
      */
     private void createQuestion(String type, String text, String mode, int numOptions, String defaultResponse) {
         Question q;
+        int column = nextColumn();
         switch (type) {
             case "dropdown":
-                q = new DropdownQuestion(driver, sheet, text, questions.size(), mode, numOptions, (int) Double.parseDouble(defaultResponse));
+                q = new DropdownQuestion(driver, text, mode, numOptions, (int) Double.parseDouble(defaultResponse));
                 break;
             case "radio":
-                q = new RadioQuestion(driver, sheet, text, questions.size(), mode, numOptions, (int) Double.parseDouble(defaultResponse));
+                q = new RadioQuestion(driver, text, mode, numOptions, (int) Double.parseDouble(defaultResponse));
                 break;
             case "boolean":
-                q = new BooleanQuestion(driver, sheet, text, questions.size(), mode, numOptions, (int) Double.parseDouble(defaultResponse));
+                q = new BooleanQuestion(driver, text, mode, numOptions, (int) Double.parseDouble(defaultResponse));
                 break;
             case "checkbox":
-                q = new CheckboxQuestion(driver, sheet, text, questions.size(), mode, numOptions, stringToIntArray(defaultResponse));
+                q = new CheckboxQuestion(driver, text, mode, numOptions, stringToIntArray(defaultResponse));
                 break;
             default:
-                q = new TextQuestion(driver, sheet, text, questions.size(), mode, numOptions, defaultResponse);
+                q = new TextQuestion(driver, text, mode, numOptions, defaultResponse);
         }
 
-        sheet.getRow(0).createCell(questions.size()).setCellValue(text);
+        setColumnName(column, text);
+        q.setSampler(sampler);
+        q.setRow(book.getCurrent());
         questions.put(text, q);
         responses.put(text, 0);
         if (mode.equals("test")) {
@@ -241,34 +1128,49 @@ public class SampleApp {
     }
 
     /*
-     * Adaptively creates new Question object from WebElement on current page
-     * @param q - the WebElement corresponding to the question to be created
+     * @return - the column index for the next new question, skipping the results column
      */
-    public void createQuestion(WebElement q) {
-        driver.manage().timeouts().implicitlyWait(10, TimeUnit.MILLISECONDS);
-        String type;
+    private int nextColumn() {
+        if (resultColumn >= 0 && questions.size() >= resultColumn) {
+            return questions.size() + 1 + (timingColumns ? LatencyRecorder.PHASES.length + 1 : 0);
+        }
+        return questions.size();
+    }
 
-        //Detect question type for creating new question
-        try {
-            type = q.findElement(By.xpath("./..//fieldset")).getAttribute("class");
-            if (type.contains("radio")) {
-                type = "radio";
-            } else if (type.contains("boolean")){
-                type = "boolean";
-            } else {
-                type = "checkbox";
-            }
-        } catch (org.openqa.selenium.NoSuchElementException e) {
+    /*
+     * Prints the name of a column to the header row
+     * @param column - the column index as an integer
+     * @param text - the column name as a String
+     */
+    private void setColumnName(int column, String text) {
+        columnNames.put(column, text);
+        if (writer != null) {
+            writer.setColumnName(column, text);
+        }
+    }
+
+    /*
+     * Adaptively creates new Question object from a question read by a PageSnapshot
+     * @param field - the question to be created
+     */
+    public void createQuestion(PageSnapshot.Field field) {
+        createQuestion(field.getType(), field.getText(), "default", countOptions(field.getType(), field.getOptions().size()));
+        if (checkpoint != null) {
             try {
-                q.findElement(By.xpath("./..//select"));
-                type = "dropdown";
-            } catch (org.openqa.selenium.NoSuchElementException f) {
-                type = "text";
+                checkpoint.addQuestion(field.getText(), field.getType());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
+    }
 
-        createQuestion(type, q.findElement(By.xpath(".//p")).getText(), "default", 0);
-        driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
+    /*
+     * @param type - the question type as a String
+     * @param elements - the number of option elements on the page
+     * @return - the number of options, leaving out the placeholder option of dropdowns
+     */
+    private static int countOptions(String type, int elements) {
+        return type.equals("dropdown") ? Math.max(0, elements - 1) : elements;
     }
 
     /*
@@ -283,22 +1185,43 @@ public class SampleApp {
      * Returns app to first page and sets success condition
      */
     public void end() {
-        Row row = sheet.getRow(sheet.getLastRowNum());
-        String state = row.getCell(0).getStringCellValue();
-        sheet.createRow(sheet.getLastRowNum() + 1);
-
-        //Success condition: the number of elements containing the [success condition] is greater than 0
-        driver.manage().timeouts().implicitlyWait(10, TimeUnit.MILLISECONDS);
-        List<WebElement> search = driver.findElements(By.xpath("//*[contains()]"));
-        driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
-        boolean success = search.size() > 0;
-        if (success) {
-            results.add("Success!");
-        } else {
-            results.add("Failure");
+        checkResult();
+
+        //The browser's memory is measured on the app page, before its tab is closed
+        if (supervisor != null) {
+            supervisor.runEnding(driver);
+        }
+        closeApp();
+    }
+
+    /*
+     * Checks the success condition and prints the run
+     */
+    private void checkResult() {
+        //Success condition: the app's declared conditions, checked together in the browser
+        long start = timings.start();
+        ResultCheck.Verdict verdict = resultCheck.check(driver);
+        timings.stop(LatencyRecorder.CHECK, start);
+        lastTimings = timings.endRun();
+        lastFlow = flow.append(driver.getCurrentUrl().replaceAll("[?#].*$", "")).toString();
+        if (metrics != null) {
+            metrics.runFinished(lastTimings[LatencyRecorder.PHASES.length], verdict.isSuccess());
         }
+        lastResult = verdict.getResult();
 
-        //Close app tab and switch to project tab
+        //Streaming output prints the result with the row, otherwise results are printed at the end
+        book.finish(lastResult, lastTimings);
+    }
+
+    /*
+     * Closes app tab and switches to project tab. A reused tab is left as it is, since the next run
+     * navigates away from it.
+     */
+    private void closeApp() {
+        if (reuseTab) {
+            return;
+        }
+        long start = timings.start();
         Set<String> handles = driver.getWindowHandles();
         String current = driver.getWindowHandle();
         String original = "";
@@ -309,21 +1232,9 @@ public class SampleApp {
         }
         driver.close();
         driver.switchTo().window(original);
+        timings.stop(LatencyRecorder.CLOSE, start);
     }
 
-    /*
-     * Prints results to excel sheet
-     */
-    private void printResults() {
-        Row row = sheet.getRow(0);
-        int cellNum = row.getLastCellNum();
-        row.createCell(cellNum).setCellValue("Results");
-        for (int i = 1; i < sheet.getLastRowNum(); i++) {
-            sheet.getRow(i).createCell(cellNum).setCellValue(results.get(i - 1));
-        }
-    }
-
-
     /*
      * Converst String to int array for checkbox custom default response
      * @param s - the String to be converted to an array
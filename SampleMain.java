@@ -2,42 +2,269 @@ package apptesting;
 
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.openqa.selenium.By;
+import org.openqa.selenium.PageLoadStrategy;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
 
 import java.io.*;
-import java.util.concurrent.TimeUnit;
 
 /*
  * A sample program utilizing the other classes to test an AfterPattern app. Sensitive information
  * has been redacted and in future iterations would be stored externally using salt and hash.
  */
 public class SampleMain {
+    public static final String LOGIN_URL = "";
     public static final String PROJECT_URL = "";
     public static final String APP_NAME = "";
     public static final String FILE_PATH = "";
     public static final String SHEET_NAME = "";
     public static final String USERNAME = "";
     public static final String PASSWORD = "";
+    public static final int POOL_SIZE = 1;
+    public static final int STRENGTH = 0;
+    public static final boolean TREE_TRAVERSAL = false;
+    public static final boolean BATCH = false;
+    public static final String OUTPUT_PATH = "";
+    public static final String QUESTIONS_PATH = "";
+    public static final String CHECKPOINT_PATH = "";
+    public static final String SCHEMA_PATH = "";
+    public static final String TIMINGS_PATH = "";
+    public static final String RUN_LOG_PATH = "";
+    public static final int WRITER_QUEUE = 1000;
+    public static final boolean TIMING_COLUMNS = false;
+    public static final int METRICS_PORT = 0;
+    public static final int PROGRESS_SECONDS = 60;
+    public static final long SEED = 0;
+    public static final long BUDGET = 0;
+    public static final String SAMPLING = "stratified";
+    public static final boolean PRUNING = false;
+    public static final boolean REUSE_TAB = false;
+    public static final String COOKIE_PATH = "";
+    public static final boolean HEADLESS = false;
+    public static final boolean BLOCK_IMAGES = false;
+    public static final String[] BLOCKED_DOMAINS = {};
+    public static final boolean PREFETCH = false;
+    public static final PageLoadStrategy PAGE_LOAD_STRATEGY = PageLoadStrategy.NORMAL;
+    public static final long RUN_TIMEOUT = 0;
+    public static final int RETRIES = 2;
+    public static final int RECYCLE_RUNS = 0;
+    public static final long RECYCLE_MEMORY = 0;
+    public static final String SUCCESS_URL = "";
+    public static final String SUCCESS_TEXT = "";
+    public static final String STATUS_SELECTOR = "";
+    public static final String SUCCESS_STATUS = "";
+    public static final String FAILURE_TEXT = "";
+    public static final String TEXT_SELECTOR = "";
 
-    //Main method
-    public static void main(String[] args) throws FileNotFoundException, IOException {
-        XSSFWorkbook workbook = getWorkbook(FILE_PATH);
-        WebDriver driver = new ChromeDriver();
-        driver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
-        login(driver);
-
-        App app = new App(driver, APP_NAME);
-        app.importFromExcel(workbook, SHEET_NAME);
-        app.test();
-
-        FileOutputStream output = new FileOutputStream(FILE_PATH);
-        workbook.write(output);
-        output.close();
-        driver.close();
+    //Main method. With "--shard i/n" only the i-th of n slices of the runs is made and every output file
+    //gets a shard suffix, so the parts can be combined with ShardMerger
+    public static void main(String[] args) throws FileNotFoundException, IOException, InterruptedException {
+        Shard shard = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--shard") && i + 1 < args.length) {
+                shard = Shard.parse(args[++i]);
+            } else if (args[i].startsWith("--shard=")) {
+                shard = Shard.parse(args[i].substring("--shard=".length()));
+            }
+        }
+        if (shard != null && TREE_TRAVERSAL) {
+            throw new IllegalArgumentException("Tree traversal cannot be sharded");
+        }
+        if (shard != null && BUDGET > 0 && SEED == 0) {
+            throw new IllegalArgumentException("Set SEED so every shard samples the same runs");
+        }
+
+        //Fail before any browser starts if no success condition is declared
+        ResultCheck resultCheck = createResultCheck();
+
+        //Browsers start and log in while the workbook is read
+        DriverPool pool = createPool();
+        //Runs are only supervised, and browsers recycled, with a RUN_TIMEOUT
+        Watchdog watchdog = null;
+        if (RUN_TIMEOUT > 0) {
+            watchdog = new Watchdog(pool, RUN_TIMEOUT, RETRIES);
+            watchdog.setRecycling(RECYCLE_RUNS, RECYCLE_MEMORY);
+        }
+        //With an output file the input workbook is only read: its "Questions" sheet, or the file at QUESTIONS_PATH,
+        //is streamed without loading the rest, and parallel results go to a new workbook at OUTPUT_PATH
+        if (!QUESTIONS_PATH.isEmpty() && OUTPUT_PATH.isEmpty()) {
+            throw new IllegalArgumentException("Set OUTPUT_PATH to read questions from QUESTIONS_PATH");
+        }
+        XSSFWorkbook workbook;
+        QuestionDefinitions definitions;
+        if (OUTPUT_PATH.isEmpty()) {
+            workbook = getWorkbook(FILE_PATH);
+            definitions = QuestionDefinitions.fromWorkbook(workbook);
+        } else {
+            definitions = QuestionDefinitions.read(QUESTIONS_PATH.isEmpty() ? FILE_PATH : QUESTIONS_PATH);
+            workbook = new XSSFWorkbook();
+            workbook.createSheet(SHEET_NAME);
+        }
+        String resultPath = OUTPUT_PATH.isEmpty() ? FILE_PATH : OUTPUT_PATH;
+        String filePath = shard == null ? resultPath : shard.getPath(resultPath);
+        String checkpointPath = shard == null ? CHECKPOINT_PATH : shard.getPath(CHECKPOINT_PATH);
+        Checkpoint checkpoint = CHECKPOINT_PATH.isEmpty() ? null : new Checkpoint(checkpointPath, 50);
+        QuestionSchema schema = SCHEMA_PATH.isEmpty() ? null : new QuestionSchema(SCHEMA_PATH);
+        RunLog runLog = RUN_LOG_PATH.isEmpty() ? null : new RunLog(shard == null ? RUN_LOG_PATH : shard.getPath(RUN_LOG_PATH), 50);
+        StreamingResults streaming = null;
+
+        //A seed of 0 picks a new one, printed so the sweep can be replayed
+        Sampler sampler = new Sampler(SEED != 0 ? SEED : System.nanoTime());
+        System.out.println("Seed: " + sampler.getSeed());
+        LatencyRecorder timings;
+        long firstRun;
+
+        //Progress is served for scraping when a port is set and printed periodically when an interval is set
+        SweepMetrics metrics = new SweepMetrics();
+        if (METRICS_PORT > 0) {
+            metrics.startServer(METRICS_PORT);
+        }
+        if (PROGRESS_SECONDS > 0) {
+            metrics.startConsole(PROGRESS_SECONDS);
+        }
+        if (POOL_SIZE > 1) {
+            ParallelRunner runner = new ParallelRunner(pool, APP_NAME, POOL_SIZE);
+            runner.setSchema(schema);
+            runner.importQuestions(definitions, workbook.getSheet(SHEET_NAME));
+            runner.setStrength(STRENGTH);
+            runner.setBatch(BATCH);
+            runner.setCheckpoint(checkpoint);
+            runner.setTimingColumns(TIMING_COLUMNS);
+            runner.setMetrics(metrics);
+            runner.setSampler(sampler);
+            runner.setSampling(SAMPLING, BUDGET);
+            runner.setShard(shard);
+            runner.setPruning(PRUNING);
+            runner.setReuseTab(REUSE_TAB);
+            runner.setWatchdog(watchdog);
+            runner.setResultCheck(resultCheck);
+            runner.setRunLog(runLog);
+            runner.setWriterQueue(WRITER_QUEUE);
+            runner.test();
+            timings = runner.getTimings();
+            firstRun = runner.getFirstRun();
+        } else {
+            WebDriver driver = pool.create();
+            SampleApp app = new SampleApp(driver, APP_NAME);
+            app.useSchema(schema);
+            app.setTimingColumns(TIMING_COLUMNS);
+            if (OUTPUT_PATH.isEmpty()) {
+                app.importQuestions(definitions, workbook.getSheet(SHEET_NAME));
+            } else {
+                streaming = new StreamingResults(filePath, SHEET_NAME, 100);
+                app.importQuestions(definitions, streaming);
+            }
+            app.setStrength(STRENGTH);
+            app.setBatch(BATCH);
+            app.setMetrics(metrics);
+            app.setSampler(sampler);
+            app.setSampling(SAMPLING, BUDGET);
+            app.setShard(shard);
+            app.setPruning(PRUNING);
+            app.setReuseTab(REUSE_TAB);
+            app.setWatchdog(watchdog);
+            app.setResultCheck(resultCheck);
+            app.setRunLog(runLog);
+            app.setWriterQueue(WRITER_QUEUE);
+            if (checkpoint != null) {
+                app.resume(checkpoint);
+            }
+            if (TREE_TRAVERSAL) {
+                app.testTree();
+            } else {
+                app.test();
+            }
+            app.getDriver().close();
+            System.out.print(app.getTransitionReport());
+            timings = app.getTimings();
+            firstRun = app.getFirstRun();
+        }
+        metrics.close();
+        pool.close();
+        System.out.println(metrics.getProgressLine());
+        System.out.print(timings.getReport());
+        if (!TIMINGS_PATH.isEmpty()) {
+            timings.write(shard == null ? TIMINGS_PATH : shard.getPath(TIMINGS_PATH));
+        }
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+        if (schema != null) {
+            System.out.print(schema.getDriftReport());
+            schema.close();
+        }
+        if (runLog != null) {
+            runLog.close();
+        }
+
+        //Streaming output is written as it goes; other results are written to the output file or back to the workbook
+        if (shard != null) {
+            ShardMerger.writeShardSheet(streaming != null ? streaming.getWorkbook() : workbook, shard, firstRun);
+        }
+        if (streaming != null) {
+            streaming.close();
+        } else {
+            FileOutputStream output = new FileOutputStream(filePath);
+            workbook.write(output);
+            output.close();
+        }
         System.out.println("Program complete!");
     }
 
+    //Start the browser sessions ahead of time, logging in once and reusing saved session cookies
+    public static DriverPool createPool() {
+        return new DriverPool(new DriverFactory() {
+            public WebDriver create() {
+                return createBrowser();
+            }
+        }, new Authenticator() {
+            public void login(WebDriver driver) {
+                SampleMain.login(driver);
+            }
+
+            public boolean isLoggedIn(WebDriver driver) {
+                return !LOGIN_URL.isEmpty() && !driver.getCurrentUrl().startsWith(LOGIN_URL);
+            }
+        }, PROJECT_URL, COOKIE_PATH, POOL_SIZE);
+    }
+
+    //Start a new browser session that is not logged in yet, with the browser settings above. HEADLESS, BLOCK_IMAGES,
+    //BLOCKED_DOMAINS (e.g. BrowserProfile.DEFAULT_BLOCKED_DOMAINS) and PageLoadStrategy.EAGER speed sweeps up but
+    //change what a run sees, so they are off until the app has been checked with them
+    public static WebDriver createBrowser() {
+        BrowserProfile profile = new BrowserProfile();
+        profile.setHeadless(HEADLESS);
+        profile.setBlockImages(BLOCK_IMAGES);
+        profile.setBlockedDomains(BLOCKED_DOMAINS);
+        profile.setPrefetch(PREFETCH);
+        profile.setPageLoadStrategy(PAGE_LOAD_STRATEGY);
+        return new ChromeDriver(profile.toChromeOptions());
+    }
+
+    //Declare what a successful run of the app looks like; conditions left empty are not checked, but at least
+    //one success condition must be set. Texts are looked for inside the element matching TEXT_SELECTOR.
+    public static ResultCheck createResultCheck() {
+        ResultCheck check = new ResultCheck();
+        if (!SUCCESS_URL.isEmpty()) {
+            check.addSuccess("redirect", ResultCheck.URL, "", SUCCESS_URL);
+        }
+        if (!SUCCESS_TEXT.isEmpty()) {
+            check.addSuccess("success text", ResultCheck.TEXT, TEXT_SELECTOR, SUCCESS_TEXT);
+        }
+        if (!STATUS_SELECTOR.isEmpty()) {
+            check.addSuccess("status", ResultCheck.STATUS, STATUS_SELECTOR, SUCCESS_STATUS);
+        }
+        if (!check.hasSuccessCondition()) {
+            throw new IllegalArgumentException("Set SUCCESS_URL, SUCCESS_TEXT or STATUS_SELECTOR so failed runs can be told apart");
+        }
+        if (!FAILURE_TEXT.isEmpty()) {
+            check.addFailure("error text", ResultCheck.TEXT, TEXT_SELECTOR, FAILURE_TEXT);
+        }
+        return check;
+    }
+
     //Import Excel spreadsheet workbook object
     public static XSSFWorkbook getWorkbook(String file) throws FileNotFoundException, IOException {
         FileInputStream input = new FileInputStream(new File(file));
@@ -48,8 +275,8 @@ public class SampleMain {
 
     //Login to Afterpattern and close cookies notice
     public static void login(WebDriver driver) {
-        driver.get("");
-        driver.findElement(By.id("user_email")).sendKeys(USERNAME);
+        driver.get(LOGIN_URL);
+        new WebDriverWait(driver, 30).until(ExpectedConditions.presenceOfElementLocated(By.id("user_email"))).sendKeys(USERNAME);
         driver.findElement(By.id("user_password")).sendKeys(PASSWORD);
         driver.findElement(By.className("blue-btn")).click();
 
@@ -0,0 +1,227 @@
+package apptesting;
+
+import java.util.*;
+
+/*
+ * The SampledCombinations class is a random sample of a fixed number of runs, for sweeps whose full set of
+ * combinations is too large to run. Uniform sampling picks runs of another set of Combinations without
+ * replacement, keeping their order. Stratified sampling builds runs in which every option of every question
+ * appears the same number of times, give or take one, so each option is reached in as few runs as possible.
+ * No run is repeated: the rare repeat that swapping options cannot fix is changed in as few questions as
+ * possible, which can leave the options it changes one run further from their share. The sample depends only on the Sampler's seed, so every session and every
+ * resumed process draws the same one.
+ */
+public class SampledCombinations implements Combinations {
+    public static final String UNIFORM = "uniform";
+    public static final String STRATIFIED = "stratified";
+
+    private List<int[]> rows;
+
+    /*
+     * Constructs a new SampledCombinations from rows that were already drawn
+     */
+    private SampledCombinations(List<int[]> rows) {
+        this.rows = rows;
+    }
+
+    /*
+     * Samples runs without replacement. Returns every run if the budget is not smaller than the set.
+     * @param base - the Combinations to sample from
+     * @param budget - the number of runs to sample
+     * @param sampler - the Sampler to draw with
+     * @return - the sampled runs in the order they have in base
+     */
+    public static SampledCombinations uniform(Combinations base, long budget, Sampler sampler) {
+        long n = base.size();
+        checkBudget(Math.min(budget, n));
+        List<int[]> rows = new ArrayList<int[]>();
+        if (budget >= n) {
+            for (int[] row : base) {
+                rows.add(row);
+            }
+            return new SampledCombinations(rows);
+        }
+
+        //Floyd's algorithm picks budget distinct indexes in budget steps
+        SplittableRandom random = sampler.generator(1);
+        TreeSet<Long> picked = new TreeSet<Long>();
+        for (long j = n - budget; j < n; j++) {
+            long t = random.nextLong(j + 1);
+            picked.add(picked.contains(t) ? j : t);
+        }
+        for (long index : picked) {
+            rows.add(base.combinationAt(index));
+        }
+        return new SampledCombinations(rows);
+    }
+
+    /*
+     * Samples runs so that the options of each question are used evenly, like a Latin hypercube: each
+     * question's options are repeated in turn down the sample and shuffled independently, then repeated runs
+     * are removed by swapping options between runs, which keeps every question balanced. A run that no swap
+     * makes new is changed in a single question if that makes it new, and otherwise replaced by the next run of
+     * the full product not in the sample yet. Returns every run if
+     * the budget is not smaller than the full product.
+     * @param radices - the number of options of each question (values below 1 are treated as 1)
+     * @param budget - the number of runs to sample
+     * @param sampler - the Sampler to draw with
+     * @return - the sampled runs
+     */
+    public static SampledCombinations stratified(int[] radices, long budget, Sampler sampler) {
+        CombinationEnumerator all = new CombinationEnumerator(radices);
+        radices = all.getRadices();
+        if (budget >= all.size()) {
+            return uniform(all, budget, sampler);
+        }
+
+        checkBudget(budget);
+        int size = (int) budget;
+        SplittableRandom random = sampler.generator(2);
+        int[][] rows = new int[size][radices.length];
+        for (int q = 0; q < radices.length; q++) {
+            int[] column = new int[size];
+            for (int j = 0; j < size; j++) {
+                column[j] = j % radices[q];
+            }
+            for (int j = size - 1; j > 0; j--) {
+                int k = random.nextInt(j + 1);
+                int swap = column[j];
+                column[j] = column[k];
+                column[k] = swap;
+            }
+            for (int j = 0; j < size; j++) {
+                rows[j][q] = column[j];
+            }
+        }
+
+        //Swap single options between a repeated run and another run until both are new
+        HashSet<String> seen = new HashSet<String>();
+        for (int j = 0; j < size; j++) {
+            int attempts = 0;
+            while (seen.contains(Arrays.toString(rows[j])) && attempts++ < 1000) {
+                int q = random.nextInt(radices.length);
+                int k = random.nextInt(size);
+                if (k == j || rows[k][q] == rows[j][q]) {
+                    continue;
+                }
+                String before = Arrays.toString(rows[k]);
+                swap(rows, j, k, q);
+                String after = Arrays.toString(rows[k]);
+                String current = Arrays.toString(rows[j]);
+                boolean clash = seen.contains(current) || current.equals(after) || (k < j && seen.contains(after));
+                if (clash) {
+                    swap(rows, j, k, q);
+                } else if (k < j) {
+                    seen.remove(before);
+                    seen.add(after);
+                }
+            }
+            if (seen.contains(Arrays.toString(rows[j]))) {
+                int[] replacement = neighbour(rows[j], radices, seen, random);
+                rows[j] = replacement != null ? replacement : unused(all, seen, random.nextLong(all.size()));
+            }
+            seen.add(Arrays.toString(rows[j]));
+        }
+        return new SampledCombinations(new ArrayList<int[]>(Arrays.asList(rows)));
+    }
+
+    /*
+     * Finds a run not in the sample yet that differs from the given run in a single question, so only that
+     * question's balance changes
+     * @param row - the repeated run
+     * @param radices - the number of options of each question
+     * @param seen - the runs in the sample so far
+     * @param random - the generator choosing which question to try first
+     * @return - a run not in seen, or null if every run one question away is in it
+     */
+    private static int[] neighbour(int[] row, int[] radices, Set<String> seen, SplittableRandom random) {
+        int first = random.nextInt(radices.length);
+        for (int i = 0; i < radices.length; i++) {
+            int q = (first + i) % radices.length;
+            for (int option = 0; option < radices[q]; option++) {
+                if (option == row[q]) {
+                    continue;
+                }
+                int[] candidate = row.clone();
+                candidate[q] = option;
+                if (!seen.contains(Arrays.toString(candidate))) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Finds the first run of the full product at or after the given index, wrapping around, that is not in
+     * the sample yet
+     * @param all - the full product
+     * @param seen - the runs in the sample so far
+     * @param start - the index to start looking from
+     * @return - a run not in seen
+     */
+    private static int[] unused(CombinationEnumerator all, Set<String> seen, long start) {
+        for (long i = 0; i < all.size(); i++) {
+            int[] row = all.combinationAt((start + i) % all.size());
+            if (!seen.contains(Arrays.toString(row))) {
+                return row;
+            }
+        }
+        throw new IllegalStateException("The sample is larger than the " + all.size() + " runs it is drawn from");
+    }
+
+    /*
+     * Checks that a sample of the given size fits in memory as a list of runs
+     * @param budget - the number of runs to sample
+     */
+    private static void checkBudget(long budget) {
+        if (budget < 0 || budget > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot sample " + budget + " runs");
+        }
+    }
+
+    /*
+     * Swaps the option of one question between two runs
+     */
+    private static void swap(int[][] rows, int a, int b, int q) {
+        int value = rows[a][q];
+        rows[a][q] = rows[b][q];
+        rows[b][q] = value;
+    }
+
+    /*
+     * @return - the number of runs
+     */
+    public long size() {
+        return rows.size();
+    }
+
+    /*
+     * Returns the run at the given index
+     * @param index - the run index, between 0 and size() - 1
+     * @return - a copy of the option index of each question
+     */
+    public int[] combinationAt(long index) {
+        if (index < 0 || index >= rows.size()) {
+            throw new IndexOutOfBoundsException("Combination " + index + " of " + rows.size());
+        }
+        return rows.get((int) index).clone();
+    }
+
+    /*
+     * Iterates over the runs in order
+     */
+    public Iterator<int[]> iterator() {
+        return new Iterator<int[]>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return index < rows.size();
+            }
+
+            public int[] next() {
+                return combinationAt(index++);
+            }
+        };
+    }
+}
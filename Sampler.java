@@ -0,0 +1,84 @@
+package apptesting;
+
+import java.util.SplittableRandom;
+
+/*
+ * The Sampler class is the single source of randomness for a sweep. Everything random is derived from one
+ * seed: the answers of questions on "random" mode are a hash of the seed, the run index and the question
+ * text, so they take no allocation, do not depend on which session makes the run or in what order, and any
+ * run can be replayed exactly from the seed and its index. Sampled sets of runs use SplittableRandom
+ * generators derived from the seed by purpose.
+ */
+public class Sampler {
+    private long seed;
+    private long run = 0;
+
+    /*
+     * Constructs a new Sampler
+     * @param seed - the seed every random choice is derived from
+     */
+    public Sampler(long seed) {
+        this.seed = seed;
+    }
+
+    /*
+     * @return - the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /*
+     * @return - a copy of this Sampler with its own current run, for another session making the same choices
+     * for the same run
+     */
+    public Sampler copy() {
+        return new Sampler(seed);
+    }
+
+    /*
+     * Sets the run that following choices belong to
+     * @param run - the run index
+     */
+    public void setRun(long run) {
+        this.run = run;
+    }
+
+    /*
+     * @return - the run that choices currently belong to
+     */
+    public long getRun() {
+        return run;
+    }
+
+    /*
+     * Chooses an option for a question on "random" mode in the current run
+     * @param text - the question text as a String
+     * @param bound - the number of options to choose from
+     * @return - the option index, between 0 and bound - 1
+     */
+    public int choose(String text, int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("No options to choose from for " + text);
+        }
+        long z = mix(seed + run * 0x9E3779B97F4A7C15L + text.hashCode() * 0xC2B2AE3D27D4EB4FL);
+        return (int) Math.floorMod(z, (long) bound);
+    }
+
+    /*
+     * @param stream - the purpose of the generator, so different purposes get unrelated numbers
+     * @return - a new generator derived from the seed
+     */
+    public SplittableRandom generator(long stream) {
+        return new SplittableRandom(mix(seed ^ mix(stream)));
+    }
+
+    /*
+     * SplitMix64 finalizer: spreads the bits of a value over the whole long
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,96 @@
+package apptesting;
+
+import java.math.BigInteger;
+
+/*
+ * The Shard class is one of n disjoint slices of a sweep, so the runs can be split across machines, or across
+ * local processes standing in for them. Shards are numbered from 1 as in "--shard 2/4". Each shard makes the
+ * runs in a contiguous range of combination indexes, so its partial output can be put back in order by
+ * ShardMerger knowing only where its range starts.
+ */
+public class Shard {
+    private int index;
+    private int count;
+
+    /*
+     * Constructs a new Shard
+     * @param index - the shard number, from 1 to count
+     * @param count - the number of shards
+     */
+    public Shard(int index, int count) {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard must be i/n with 1 <= i <= n, got " + index + "/" + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /*
+     * @param s - the shard as "i/n"
+     * @return - the Shard
+     */
+    public static Shard parse(String s) {
+        String[] parts = s.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Shard must be i/n, got " + s);
+        }
+        return new Shard(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    /*
+     * @return - the shard number, from 1
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /*
+     * @return - the number of shards
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /*
+     * @param total - the number of runs in the whole sweep
+     * @return - the combination index of the shard's first run
+     */
+    public long getStart(long total) {
+        return boundary(total, index - 1);
+    }
+
+    /*
+     * @param total - the number of runs in the whole sweep
+     * @return - the combination index after the shard's last run
+     */
+    public long getEnd(long total) {
+        return boundary(total, index);
+    }
+
+    /*
+     * @return - total * k / count, computed without overflow since totals can be up to Long.MAX_VALUE
+     */
+    private long boundary(long total, int k) {
+        return BigInteger.valueOf(total).multiply(BigInteger.valueOf(k)).divide(BigInteger.valueOf(count)).longValue();
+    }
+
+    /*
+     * @param path - the path of a file written by the whole sweep
+     * @return - the path of the same file for this shard, such as results.shard-2-of-4.xlsx
+     */
+    public String getPath(String path) {
+        String suffix = ".shard-" + index + "-of-" + count;
+        int dot = path.lastIndexOf('.');
+        if (dot <= Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'))) {
+            return path + suffix;
+        }
+        return path.substring(0, dot) + suffix + path.substring(dot);
+    }
+
+    /*
+     * @return - the shard as "i/n"
+     */
+    public String toString() {
+        return index + "/" + count;
+    }
+}
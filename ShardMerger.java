@@ -0,0 +1,246 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/*
+ * The ShardMerger class combines the partial results of a sharded sweep into one output sheet ordered by
+ * combination index, with the "Results" column after the questions as in a sweep run by a single process.
+ * Partial results can be workbooks written by shards, whose "Shard" sheet tells where their rows start, or
+ * checkpoint files and run logs, which record the combination index of every run. Files are only read, so a
+ * shard that is still running can be merged. Columns are matched by name since each shard numbers the
+ * questions it discovers on its own. Runs missing from every part are left as empty rows.
+ */
+public class ShardMerger {
+    public static final String SHARD_SHEET = "Shard";
+
+    private TreeMap<Long, Map<String, String>> rows = new TreeMap<Long, Map<String, String>>();
+    private LinkedHashSet<String> columns = new LinkedHashSet<String>();
+    private String plan;
+
+    /*
+     * Adds a sheet describing which shard a workbook holds and the combination index of its first row
+     * @param workbook - the Workbook the shard's output sheet is in
+     * @param shard - the Shard that was run
+     * @param firstRun - the combination index of the run in the first row
+     */
+    public static void writeShardSheet(Workbook workbook, Shard shard, long firstRun) {
+        Sheet sheet = workbook.createSheet(SHARD_SHEET);
+        Row row = sheet.createRow(0);
+        row.createCell(0).setCellValue("Shard");
+        row.createCell(1).setCellValue(shard.toString());
+        row = sheet.createRow(1);
+        row.createCell(0).setCellValue("First run");
+        row.createCell(1).setCellValue(firstRun);
+    }
+
+    /*
+     * Adds the runs of a workbook written by one shard
+     * @param path - the path of the .xlsx file as a String
+     * @param sheetName - the name of the output sheet as a String
+     */
+    public void addWorkbook(String path, String sheetName) throws IOException {
+        FileInputStream input = new FileInputStream(path);
+        XSSFWorkbook workbook;
+        try {
+            workbook = new XSSFWorkbook(input);
+        } finally {
+            input.close();
+        }
+
+        Sheet sheet = workbook.getSheet(sheetName);
+        Sheet shardSheet = workbook.getSheet(SHARD_SHEET);
+        if (sheet == null || shardSheet == null) {
+            throw new IllegalArgumentException(path + " has no \"" + sheetName + "\" or \"" + SHARD_SHEET + "\" sheet");
+        }
+        long firstRun = (long) shardSheet.getRow(1).getCell(1).getNumericCellValue();
+
+        //Streaming output names late columns on the "Columns" sheet only
+        HashMap<Integer, String> names = new HashMap<Integer, String>();
+        for (Cell cell : sheet.getRow(0)) {
+            names.put(cell.getColumnIndex(), cell.getStringCellValue());
+        }
+        Sheet columnSheet = workbook.getSheet("Columns");
+        if (columnSheet != null) {
+            for (Row row : columnSheet) {
+                names.put((int) row.getCell(0).getNumericCellValue() - 1, row.getCell(1).getStringCellValue());
+            }
+        }
+
+        DataFormatter df = new DataFormatter();
+        for (int r = 1; r <= sheet.getLastRowNum(); r++) {
+            Row row = sheet.getRow(r);
+            if (row == null || row.getPhysicalNumberOfCells() == 0) {
+                continue;
+            }
+            LinkedHashMap<String, String> cells = new LinkedHashMap<String, String>();
+            for (Cell cell : row) {
+                cells.put(names.get(cell.getColumnIndex()), df.formatCellValue(cell));
+            }
+            add(firstRun + r - 1, cells);
+        }
+        workbook.close();
+    }
+
+    /*
+     * Adds the runs recorded in a checkpoint file or a run log by one shard, with their phase times in
+     * milliseconds if they were timed
+     * @param path - the path of the file as a String
+     */
+    public void addLog(String path) throws IOException {
+        RunLog log = RunLog.readOnly(path);
+        try {
+            if (plan != null && log.getPlan() != null && !plan.equals(log.getPlan())) {
+                throw new IllegalStateException(path + " was made for different runs: " + log.getPlan());
+            }
+            if (plan == null) {
+                plan = log.getPlan();
+            }
+            String[] timings = LatencyRecorder.getColumnNames();
+            BitSet records = log.all();
+            for (int r = records.nextSetBit(0); r >= 0; r = records.nextSetBit(r + 1)) {
+                RunLog.Entry entry = log.read(r);
+                LinkedHashMap<String, String> cells = new LinkedHashMap<String, String>(entry.getRow());
+                cells.put("Results", entry.getResult());
+                if (entry.getTimings() != null) {
+                    for (int i = 0; i < entry.getTimings().length && i < timings.length; i++) {
+                        cells.put(timings[i], String.valueOf(entry.getTimings()[i] / 1000.0));
+                    }
+                }
+                add(entry.getIndex(), cells);
+            }
+        } finally {
+            log.close();
+        }
+    }
+
+    /*
+     * Adds one run, replacing any earlier copy of it
+     */
+    private void add(long index, Map<String, String> cells) {
+        rows.put(index, cells);
+        columns.addAll(cells.keySet());
+    }
+
+    /*
+     * @param total - the number of runs in the whole sweep, or 0 to stop at the last run found
+     * @return - the ranges of combination indexes below the total, or up to the last run found, with no run in
+     * any part, each as its first index and the index after its last
+     */
+    public List<long[]> getMissing(long total) {
+        List<long[]> missing = new ArrayList<long[]>();
+        long end = total > 0 ? total : (rows.isEmpty() ? 0 : rows.lastKey() + 1);
+        long next = 0;
+        for (long index : rows.keySet()) {
+            if (index >= end) {
+                break;
+            }
+            if (index > next) {
+                missing.add(new long[] {next, index});
+            }
+            next = index + 1;
+        }
+        if (next < end) {
+            missing.add(new long[] {next, end});
+        }
+        return missing;
+    }
+
+    /*
+     * Writes every run to one sheet, row i + 1 holding the run with combination index i. Question columns
+     * come first in the order they were found, then "Results", then the phase time columns. Fails before
+     * writing anything if a run's row would be past the last row of a sheet.
+     * @param path - the path of the .xlsx file to write as a String
+     * @param sheetName - the name of the output sheet as a String
+     */
+    public void write(String path, String sheetName) throws IOException {
+        int lastRow = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+        if (!rows.isEmpty() && rows.lastKey() >= lastRow) {
+            throw new IllegalStateException("Run " + rows.lastKey() + " does not fit in a sheet, which holds the runs "
+                    + "with combination index 0 to " + (lastRow - 1) + "; export a filtered selection of the run logs with RunLogExporter instead");
+        }
+
+        List<String> order = new ArrayList<String>();
+        List<String> timings = Arrays.asList(LatencyRecorder.getColumnNames());
+        for (String column : columns) {
+            if (!column.equals("Results") && !timings.contains(column)) {
+                order.add(column);
+            }
+        }
+        order.add("Results");
+        for (String column : timings) {
+            if (columns.contains(column)) {
+                order.add(column);
+            }
+        }
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet(sheetName);
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < order.size(); c++) {
+                header.createCell(c).setCellValue(order.get(c));
+            }
+
+            //Rows are written in ascending order, as the streaming workbook requires
+            for (Map.Entry<Long, Map<String, String>> run : rows.entrySet()) {
+                Row row = sheet.createRow((int) (run.getKey() + 1));
+                for (int c = 0; c < order.size(); c++) {
+                    String value = run.getValue().get(order.get(c));
+                    if (value != null) {
+                        row.createCell(c).setCellValue(value);
+                    }
+                }
+            }
+
+            FileOutputStream output = new FileOutputStream(path);
+            try {
+                workbook.write(output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    /*
+     * Merges partial results from the command line
+     * @param args - the output .xlsx path, the output sheet name, then every partial workbook (.xlsx),
+     * checkpoint file or run log
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ShardMerger <output.xlsx> <sheet name> <part.xlsx | checkpoint | run log>...");
+            System.exit(2);
+        }
+
+        ShardMerger merger = new ShardMerger();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].toLowerCase().endsWith(".xlsx")) {
+                merger.addWorkbook(args[i], args[1]);
+            } else {
+                merger.addLog(args[i]);
+            }
+        }
+        List<long[]> missing = merger.getMissing(0);
+        if (!missing.isEmpty()) {
+            long count = 0;
+            for (long[] range : missing) {
+                count += range[1] - range[0];
+            }
+            System.out.println(count + " runs missing in " + missing.size() + " ranges, first: " + missing.get(0)[0]);
+        }
+        merger.write(args[0], args[1]);
+        System.out.println("Merged " + merger.rows.size() + " runs into " + args[0]);
+    }
+}
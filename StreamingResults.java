@@ -0,0 +1,83 @@
+package apptesting;
+
+import java.io.*;
+import java.util.*;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/*
+ * The StreamingResults class is an output sheet backed by a streaming SXSSFWorkbook. Only the most recent rows
+ * are kept in memory; older rows are flushed to a compressed temporary file as the sweep goes on, so memory
+ * use stays flat however many runs are made. Because flushed rows can no longer be changed, the names of
+ * questions discovered after the header row was flushed are only listed on a second "Columns" sheet, which
+ * holds the complete header when the file is written.
+ */
+public class StreamingResults implements Closeable {
+    private String path;
+    private SXSSFWorkbook workbook;
+    private Sheet sheet;
+    private TreeMap<Integer, String> columns = new TreeMap<Integer, String>();
+
+    /*
+     * Constructs a new StreamingResults object writing to the given file
+     * @param path - the path of the .xlsx file to write as a String
+     * @param sheetName - the name of the output sheet as a String
+     * @param windowSize - the number of rows to keep in memory as an integer
+     */
+    public StreamingResults(String path, String sheetName, int windowSize) {
+        this.path = path;
+        workbook = new SXSSFWorkbook(windowSize);
+        workbook.setCompressTempFiles(true);
+        sheet = workbook.createSheet(sheetName);
+    }
+
+    /*
+     * @return - the Sheet to print to
+     */
+    public Sheet getSheet() {
+        return sheet;
+    }
+
+    /*
+     * @return - the Workbook holding the output sheet, for adding other sheets before it is written
+     */
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /*
+     * Names a column, printing the name to the header row if it has not been flushed yet
+     * @param column - the column index as an integer
+     * @param text - the column name as a String
+     */
+    public void setColumnName(int column, String text) {
+        columns.put(column, text);
+        Row header = sheet.getRow(0);
+        if (header != null) {
+            header.createCell(column).setCellValue(text);
+        }
+    }
+
+    /*
+     * Writes the "Columns" sheet and the workbook to the file and deletes the temporary files
+     */
+    public void close() throws IOException {
+        Sheet columnSheet = workbook.createSheet("Columns");
+        int i = 0;
+        for (Map.Entry<Integer, String> entry : columns.entrySet()) {
+            Row row = columnSheet.createRow(i++);
+            row.createCell(0).setCellValue(entry.getKey() + 1);
+            row.createCell(1).setCellValue(entry.getValue());
+        }
+
+        FileOutputStream output = new FileOutputStream(path);
+        try {
+            workbook.write(output);
+        } finally {
+            output.close();
+            workbook.dispose();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package apptesting;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The SweepMetrics class tracks the progress of a sweep while it runs: completed and total combinations, runs
+ * per second, the average latency of recent runs, the failure rate, the estimated time left and the number of
+ * active browser sessions. They can be served in the Prometheus text format from a local HTTP endpoint and
+ * printed as a periodic console line, so throughput drops and hung sessions show up before the sweep ends.
+ * Every method may be called from any session's thread.
+ */
+public class SweepMetrics implements Closeable {
+    private static final int WINDOW = 100;
+
+    private long startTime = System.nanoTime();
+    private long total = 0;
+    private long completed = 0;
+    private long restored = 0;
+    private long failed = 0;
+    private long failedAttempts = 0;
+    private int activeSessions = 0;
+    private long[] recent = new long[WINDOW];
+    private int recentCount = 0;
+    private HttpServer server;
+    private ScheduledExecutorService console;
+
+    /*
+     * Sets the number of combinations in the sweep
+     * @param total - the number of combinations as a long
+     */
+    public synchronized void setTotal(long total) {
+        this.total = total;
+    }
+
+    /*
+     * Counts a browser session as active
+     */
+    public synchronized void sessionStarted() {
+        activeSessions++;
+    }
+
+    /*
+     * Counts a browser session as no longer active
+     */
+    public synchronized void sessionEnded() {
+        activeSessions--;
+    }
+
+    /*
+     * Counts a run restored from a checkpoint, which is completed but not included in the run rate
+     */
+    public synchronized void runRestored() {
+        completed++;
+        restored++;
+    }
+
+    /*
+     * Counts a finished run
+     * @param micros - the time the run took in microseconds
+     * @param success - whether the run succeeded
+     */
+    public synchronized void runFinished(long micros, boolean success) {
+        completed++;
+        if (!success) {
+            failed++;
+        }
+        recent[recentCount++ % WINDOW] = micros;
+    }
+
+    /*
+     * Counts a supervised attempt at a run that timed out or lost its browser, whether or not the run is
+     * tried again
+     */
+    public synchronized void attemptFailed() {
+        failedAttempts++;
+    }
+
+    /*
+     * @return - the runs made by this process per second since the metrics were created
+     */
+    private synchronized double getRate() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds <= 0 ? 0 : (completed - restored) / seconds;
+    }
+
+    /*
+     * @return - the mean time in seconds of the last runs, up to 100 of them
+     */
+    private synchronized double getAverageLatency() {
+        int n = Math.min(recentCount, WINDOW);
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += recent[i];
+        }
+        return n == 0 ? 0 : sum / 1e6 / n;
+    }
+
+    /*
+     * @return - the failed share of the runs made by this process
+     */
+    private synchronized double getFailureRate() {
+        long runs = completed - restored;
+        return runs == 0 ? 0 : (double) failed / runs;
+    }
+
+    /*
+     * @return - the estimated seconds until every combination is run, or -1 if it is not known yet
+     */
+    private synchronized double getEta() {
+        double rate = getRate();
+        return rate <= 0 || total <= 0 ? -1 : Math.max(0, total - completed) / rate;
+    }
+
+    /*
+     * @return - every metric in the Prometheus text exposition format
+     */
+    public synchronized String getPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        metric(text, "apptesting_combinations", "gauge", "Combinations in the sweep", total);
+        metric(text, "apptesting_runs_completed_total", "counter", "Runs completed, including runs restored from a checkpoint", completed);
+        metric(text, "apptesting_runs_failed_total", "counter", "Runs whose success condition was not met", failed);
+        metric(text, "apptesting_attempts_failed_total", "counter", "Supervised attempts that timed out or lost their browser", failedAttempts);
+        metric(text, "apptesting_runs_per_second", "gauge", "Runs made by this process per second", getRate());
+        metric(text, "apptesting_run_latency_seconds", "gauge", "Mean duration of the last 100 runs", getAverageLatency());
+        metric(text, "apptesting_failure_ratio", "gauge", "Failed share of the runs made by this process", getFailureRate());
+        metric(text, "apptesting_eta_seconds", "gauge", "Estimated seconds until the sweep ends, -1 if unknown", getEta());
+        metric(text, "apptesting_active_sessions", "gauge", "Browser sessions currently running", activeSessions);
+        return text.toString();
+    }
+
+    /*
+     * Appends one metric with its help and type lines
+     */
+    private static void metric(StringBuilder text, String name, String type, String help, double value) {
+        text.append("# HELP ").append(name).append(" ").append(help).append("\n");
+        text.append("# TYPE ").append(name).append(" ").append(type).append("\n");
+        text.append(name).append(" ").append(value == Math.rint(value) ? String.valueOf((long) value)
+                : String.format(Locale.ROOT, "%.4f", value)).append("\n");
+    }
+
+    /*
+     * @return - a one line summary of the sweep's progress
+     */
+    public synchronized String getProgressLine() {
+        double eta = getEta();
+        return String.format(Locale.ROOT, "Progress: %d/%d (%.1f%%), %.2f runs/s, avg run %.2fs, failures %.1f%%, failed attempts %d, ETA %s, sessions %d",
+                completed, total, total == 0 ? 0 : 100.0 * completed / total, getRate(), getAverageLatency(),
+                100 * getFailureRate(), failedAttempts, eta < 0 ? "unknown" : formatDuration((long) eta), activeSessions);
+    }
+
+    /*
+     * @return - the given seconds as hours, minutes and seconds
+     */
+    private static String formatDuration(long seconds) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    /*
+     * Serves the metrics at /metrics on the loopback interface
+     * @param port - the port to listen on
+     */
+    public void startServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = getPrometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    /*
+     * Prints the progress line to the console periodically
+     * @param seconds - the seconds between lines
+     */
+    public void startConsole(long seconds) {
+        console = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sweep-progress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        console.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                System.out.println(getProgressLine());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Stops the endpoint and the console line
+     */
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (console != null) {
+            console.shutdownNow();
+        }
+    }
+}
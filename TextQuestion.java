@@ -1,28 +1,26 @@
 package apptesting;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.openqa.selenium.By;
+import java.util.Collections;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
 
 public class TextQuestion extends Question {
 	private String defaultResponse = "123";
 	
 	//Constructor without custom default response
-	public TextQuestion(WebDriver driver, XSSFSheet sheet, String text, int column, String mode, int numResponses) {
-		super(driver, sheet, text, column, mode, numResponses);
+	public TextQuestion(WebDriver driver, String text, String mode, int numResponses) {
+		super(driver, text, mode, numResponses);
 	}
 	
 	//Constructor with custom default response
-	public TextQuestion(WebDriver driver, XSSFSheet sheet, String text, int column, String mode, int numResponses, String defaultResponse) {
-		super(driver, sheet, text, column, mode, numResponses);
+	public TextQuestion(WebDriver driver, String text, String mode, int numResponses, String defaultResponse) {
+		super(driver, text, mode, numResponses);
 		this.defaultResponse = defaultResponse;
 	}
 	
-	//Implementation of test method from parent class
-	public void test(int option, int i) {
-		Cell cell = getSheet().getRow(getSheet().getLastRowNum()).createCell(getColumn());
-		cell.setCellValue(defaultResponse);
-		getDriver().findElement(By.xpath(getXpath(i) + "//input")).sendKeys(defaultResponse);
+	//Implementation of choose method from parent class
+	public Answer choose(int option, PageSnapshot.Field field) {
+		print(defaultResponse);
+		return new Answer(Answer.Kind.TEXT, Collections.<WebElement>emptyList(), field.getInput(), defaultResponse);
 	}
 }
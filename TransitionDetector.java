@@ -0,0 +1,235 @@
+package apptesting;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptException;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.ScriptTimeoutException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+/*
+ * The TransitionDetector class waits for AfterPattern page transitions by listening for them in the browser
+ * instead of polling with implicit waits. A MutationObserver resolves the wait as soon as the URL changes or
+ * a different page with an enabled continue button has rendered and the DOM has been quiet for a moment.
+ * The time taken by each kind of step is recorded so slow transitions can be reported. The detector owns the
+ * script timeout of its driver: it sets it before its first wait on a driver and again when its own timeout
+ * changes, so nothing else should rely on the driver's script timeout.
+ */
+public class TransitionDetector {
+    /*
+     * Transition states returned by the wait
+     */
+    public static final String URL = "url";
+    public static final String QUESTIONS = "questions";
+    public static final String EMPTY = "empty";
+    public static final String TIMEOUT = "timeout";
+
+    private static final String CAPTURE =
+        "var labels = document.getElementsByClassName('page-block__field-label');"
+        + "var signature = [];"
+        + "for (var i = 0; i < labels.length; i++) { signature.push(labels[i].innerText); }"
+        + "return [signature.join('\\n'), location.href, document.querySelector(\"[class='btn-primary']\")];";
+
+    private static final String WAIT =
+        "var before = arguments[0], url = arguments[1], button = arguments[2], timeout = arguments[3], quiet = arguments[4];"
+        + "var done = arguments[arguments.length - 1];"
+        + "var finished = false, timer = null, observer = null, limit = null;"
+        + "function state() {"
+        + "  if (url != null && location.href != url) { return 'url'; }"
+        + "  var labels = document.getElementsByClassName('page-block__field-label');"
+        + "  var signature = [];"
+        + "  for (var i = 0; i < labels.length; i++) { signature.push(labels[i].innerText); }"
+        + "  var moved = before == null || signature.join('\\n') != before || (button != null && !document.contains(button));"
+        + "  if (!moved || !document.querySelector(\"[class='btn-primary']\")) { return null; }"
+        + "  return labels.length > 0 ? 'questions' : 'empty';"
+        + "}"
+        + "function finish(result) {"
+        + "  if (finished) { return; }"
+        + "  finished = true;"
+        + "  if (observer) { observer.disconnect(); }"
+        + "  clearTimeout(timer);"
+        + "  clearTimeout(limit);"
+        + "  done(result);"
+        + "}"
+        + "function check() {"
+        + "  clearTimeout(timer);"
+        + "  var result = state();"
+        + "  if (result == 'url') {"
+        + "    finish(result);"
+        + "  } else if (result) {"
+        + "    timer = setTimeout(function () { var again = state(); if (again) { finish(again); } }, quiet);"
+        + "  }"
+        + "}"
+        + "limit = setTimeout(function () { finish('timeout'); }, timeout);"
+        + "observer = new MutationObserver(check);"
+        + "observer.observe(document.documentElement, {childList: true, subtree: true, attributes: true, characterData: true});"
+        + "check();";
+
+    private WebDriver driver;
+    private long timeout;
+    private long quiet;
+    private boolean scriptTimeoutSet = false;
+    private LinkedHashMap<String, long[]> latencies = new LinkedHashMap<String, long[]>();
+    private long lastLatency;
+
+    /*
+     * Constructs a new TransitionDetector
+     * @param driver - the Selenium WebDriver to watch
+     * @param timeout - the most milliseconds to wait for a transition
+     * @param quiet - the milliseconds the DOM must stay unchanged before a new page counts as rendered
+     */
+    public TransitionDetector(WebDriver driver, long timeout, long quiet) {
+        this.driver = driver;
+        this.timeout = timeout;
+        this.quiet = quiet;
+    }
+
+    /*
+     * Watches a new browser, after the old one was replaced, keeping the latencies recorded so far
+     * @param driver - the Selenium WebDriver to watch
+     */
+    public void setDriver(WebDriver driver) {
+        this.driver = driver;
+        scriptTimeoutSet = false;
+    }
+
+    /*
+     * Sets how long to wait for a transition, keeping the latencies recorded so far
+     * @param timeout - the most milliseconds to wait for a transition
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+        scriptTimeoutSet = false;
+    }
+
+    /*
+     * Clicks the given button and waits for the page to change
+     * @param button - the WebElement to click
+     * @param step - the name of the step for latency reporting
+     * @return - URL, QUESTIONS, EMPTY or TIMEOUT
+     */
+    public String click(final WebElement button, String step) {
+        return perform(new Runnable() {
+            public void run() {
+                button.click();
+            }
+        }, step);
+    }
+
+    /*
+     * Runs the given action and waits for the page to change
+     * @param action - the action that starts the transition
+     * @param step - the name of the step for latency reporting
+     * @return - URL, QUESTIONS, EMPTY or TIMEOUT
+     */
+    public String perform(Runnable action, String step) {
+        List<?> before = (List<?>) ((JavascriptExecutor) driver).executeScript(CAPTURE);
+        long start = System.nanoTime();
+        action.run();
+        return await((String) before.get(0), (String) before.get(1), before.get(2), start, step);
+    }
+
+    /*
+     * Waits for any page with an enabled continue button, such as the first page of a newly opened app
+     * @param step - the name of the step for latency reporting
+     * @return - QUESTIONS, EMPTY or TIMEOUT
+     */
+    public String await(String step) {
+        return await(null, null, null, System.nanoTime(), step);
+    }
+
+    /*
+     * Waits in the browser for a transition away from the given page, starting the wait again if the
+     * document is replaced by a full page load while waiting. Any other error, such as the browser being quit
+     * by a Watchdog or a script error, is thrown rather than waited out.
+     */
+    private String await(String signature, String url, Object button, long start, String step) {
+        if (!scriptTimeoutSet) {
+            //The script gives up on its own after the remaining time, so the driver only has to allow for that
+            driver.manage().timeouts().setScriptTimeout(timeout + 5000, TimeUnit.MILLISECONDS);
+            scriptTimeoutSet = true;
+        }
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        String result = TIMEOUT;
+        while (System.nanoTime() < deadline) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                result = (String) ((JavascriptExecutor) driver).executeAsyncScript(WAIT, signature, url, button, remaining, quiet);
+                break;
+            } catch (ScriptTimeoutException e) {
+                break;
+            } catch (StaleElementReferenceException e) {
+                //The page was replaced before the wait started; the old button is gone with it
+                button = null;
+            } catch (JavascriptException e) {
+                if (!isUnload(e)) {
+                    throw e;
+                }
+                //The page unloaded under the script; the old button is gone with it
+                button = null;
+                if (url != null && !url.equals(driver.getCurrentUrl())) {
+                    result = URL;
+                    break;
+                }
+            }
+        }
+
+        lastLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long[] stats = latencies.get(step);
+        if (stats == null) {
+            stats = new long[3];
+            latencies.put(step, stats);
+        }
+        stats[0]++;
+        stats[1] += lastLatency;
+        stats[2] = Math.max(stats[2], lastLatency);
+        return result;
+    }
+
+    /*
+     * @return - true if a script failed because the document it ran in was unloaded or replaced
+     */
+    private static boolean isUnload(WebDriverException e) {
+        String message = e.getMessage() == null ? "" : e.getMessage();
+        return message.contains("unloaded") || message.contains("context was destroyed")
+                || message.contains("Cannot find context");
+    }
+
+    /*
+     * Waits for an element on a page that may still be rendering, such as the app link on the project page.
+     * Drivers have no implicit wait, so lookups that can run before their element appears go through here.
+     * @param by - the locator of the element
+     * @return - the WebElement, once present
+     */
+    public WebElement waitFor(By by) {
+        return new WebDriverWait(driver, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeout)))
+                .until(ExpectedConditions.presenceOfElementLocated(by));
+    }
+
+    /*
+     * @return - the milliseconds taken by the last transition
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /*
+     * @return - one line per step with the number of transitions and their mean and max milliseconds
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : latencies.entrySet()) {
+            long[] stats = entry.getValue();
+            report.append(entry.getKey()).append(": n=").append(stats[0])
+                    .append(", mean=").append(stats[1] / stats[0]).append("ms")
+                    .append(", max=").append(stats[2]).append("ms\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package apptesting;
+
+import java.util.concurrent.*;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/*
+ * The Watchdog class supervises the runs of a SampleApp. Each run gets a wall-clock budget; a run that goes
+ * over it has its browser killed, which makes the stuck WebDriver call fail, and the RunSupervisor replaces the
+ * browser from the DriverFactory and retries the run a bounded number of times before recording it as a
+ * timeout. A run that does not stop even then is interrupted, and the retry waits for its thread to exit so
+ * the two never share the session's state. Browsers are also recycled after a number of runs or once the app
+ * page's JavaScript heap passes a threshold, so a long sweep does not slow down as Chrome's memory grows. The
+ * settings are shared by every session using the Watchdog.
+ */
+public class Watchdog {
+    private DriverFactory factory;
+    private long runTimeout;
+    private int retries;
+    private int recycleRuns = 0;
+    private long recycleMemory = 0;
+
+    /*
+     * Constructs a new Watchdog
+     * @param factory - the DriverFactory creating replacement browsers
+     * @param runTimeout - the most milliseconds a run may take
+     * @param retries - the number of times a run that timed out or lost its browser is tried again
+     */
+    public Watchdog(DriverFactory factory, long runTimeout, int retries) {
+        this.factory = factory;
+        this.runTimeout = runTimeout;
+        this.retries = retries;
+    }
+
+    /*
+     * Sets when browsers are replaced even though they still work
+     * @param runs - the number of runs after which a browser is replaced, or 0 to never count runs
+     * @param memoryBytes - the JavaScript heap size of the app page above which a browser is replaced,
+     * or 0 to never measure it
+     */
+    public void setRecycling(int runs, long memoryBytes) {
+        recycleRuns = runs;
+        recycleMemory = memoryBytes;
+    }
+
+    /*
+     * @return - the number of times a failed run is tried again
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /*
+     * Runs a task on its own thread, killing the browser if it takes longer than the run timeout. Every way
+     * the run can fail except an Error is reported as a WebDriverException, so the caller can retry it or
+     * record it and go on with the sweep. The task's thread has always exited when this returns or throws.
+     * @param task - the run
+     * @param driver - the WebDriver the run uses
+     * @return - the task's result
+     */
+    public <T> T call(Callable<T> task, WebDriver driver) {
+        FutureTask<T> future = new FutureTask<T>(task);
+        Thread thread = new Thread(future, "supervised-run");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            return future.get(runTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            //Every call into the killed browser fails, so the run stops before its state is reset
+            kill(driver);
+            if (!awaitExit(thread, runTimeout)) {
+                thread.interrupt();
+                awaitExit(thread, 0);
+                throw new org.openqa.selenium.TimeoutException("Run took longer than " + runTimeout
+                        + "ms and only stopped once interrupted");
+            }
+            throw new org.openqa.selenium.TimeoutException("Run took longer than " + runTimeout + "ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof WebDriverException) {
+                throw (WebDriverException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new WebDriverException("Run failed", e.getCause());
+        } catch (InterruptedException e) {
+            kill(driver);
+            thread.interrupt();
+            awaitExit(thread, 0);
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("Interrupted while supervising a run", e);
+        }
+    }
+
+    /*
+     * Waits for a run's thread to exit. An interrupt of the waiting thread is passed on to the run and kept
+     * for the caller.
+     * @param thread - the run's thread
+     * @param millis - the most milliseconds to wait, or 0 to wait until it exits
+     * @return - true if the thread exited
+     */
+    private static boolean awaitExit(Thread thread, long millis) {
+        boolean interrupted = Thread.interrupted();
+        long deadline = System.currentTimeMillis() + millis;
+        while (thread.isAlive()) {
+            long left = deadline - System.currentTimeMillis();
+            if (millis > 0 && left <= 0) {
+                break;
+            }
+            try {
+                thread.join(millis > 0 ? left : 0);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    /*
+     * Kills a browser and creates a new one in its place
+     * @param driver - the WebDriver to kill
+     * @return - a new WebDriver ready for SampleApp.runApp()
+     */
+    public WebDriver replace(WebDriver driver) {
+        kill(driver);
+        return factory.create();
+    }
+
+    /*
+     * @param driver - the WebDriver that just finished a run
+     * @param runs - the number of runs it has made
+     * @return - true if the browser should be replaced before the next run
+     */
+    public boolean shouldRecycle(WebDriver driver, int runs) {
+        if (recycleRuns > 0 && runs >= recycleRuns) {
+            return true;
+        }
+        if (recycleMemory > 0) {
+            try {
+                Object used = ((JavascriptExecutor) driver).executeScript(
+                        "return window.performance && performance.memory ? performance.memory.usedJSHeapSize : 0;");
+                return used instanceof Number && ((Number) used).longValue() > recycleMemory;
+            } catch (WebDriverException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Quits a browser, ignoring errors from a browser that has already gone
+     */
+    private static void kill(WebDriver driver) {
+        try {
+            driver.quit();
+        } catch (WebDriverException e) {
+            //Already gone
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package apptesting;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Benchmarks enumerating the runs of a sweep: iterating every combination, random access by index,
+ * and building a pairwise covering array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombinationBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int runs;
+
+    private CombinationEnumerator combinations;
+
+    @Setup
+    public void setup() {
+        //Questions with 10 options each, so the full product has the given number of runs
+        int[] radices = new int[(int) Math.round(Math.log10(runs))];
+        java.util.Arrays.fill(radices, 10);
+        combinations = new CombinationEnumerator(radices);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        for (int[] options : combinations) {
+            bh.consume(options);
+        }
+    }
+
+    @Benchmark
+    public void randomAccess(Blackhole bh) {
+        long size = combinations.size();
+        for (long i = 0; i < size; i += 7) {
+            bh.consume(combinations.combinationAt(i));
+        }
+    }
+
+    @Benchmark
+    public CoveringArray pairwise() {
+        return new CoveringArray(combinations.getRadices(), 2, null);
+    }
+}
@@ -0,0 +1,473 @@
+package apptesting;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.logging.Logs;
+
+/*
+ * The FakeWebDriver class is a deterministic in-memory stand-in for a browser running an AfterPattern app.
+ * It models the project page link, a fixed sequence of pages of radio, boolean, dropdown, checkbox and text
+ * questions, the continue button and the redirect at the end of the app, and answers the scripts used by
+ * PageSnapshot, Answer, TransitionDetector and ResultCheck by recognising them. It lets the orchestration
+ * code in SampleApp and the Question classes be benchmarked without a real browser. It can also re-render
+ * the page on every answer, like apps that rebuild their form, so earlier element handles go stale.
+ */
+public class FakeWebDriver implements WebDriver, JavascriptExecutor {
+    private static final String PROJECT_URL = "https://afterpattern.invalid/projects";
+    static final String APP_URL = "https://afterpattern.invalid/app";
+    private static final String END_URL = "https://afterpattern.invalid/app/done";
+    private static final String[] TYPES = {"radio", "boolean", "dropdown", "checkbox", "text"};
+
+    private List<List<FakeField>> pages;
+    private FakeWebElement link = new FakeWebElement(this, "a", "Open");
+    private FakeWebElement button = new FakeWebElement(this, "button", "Continue");
+    private List<Map<String, Object>> rendered;
+    private boolean appOpen;
+    private String window = "project";
+    private int page;
+    private boolean done;
+    private int runs;
+    private boolean rerender;
+
+    /*
+     * Constructs a new FakeWebDriver for an app with the given pages
+     * @param pages - the questions on each page in order
+     */
+    public FakeWebDriver(List<List<FakeField>> pages) {
+        this.pages = pages;
+    }
+
+    /*
+     * Constructs a new FakeWebDriver for an app with the given number of pages, each with the same number
+     * of questions cycling through every question type
+     * @param numPages - the number of pages
+     * @param questionsPerPage - the number of questions on each page
+     * @param numOptions - the number of options of each radio, dropdown and checkbox question
+     */
+    public FakeWebDriver(int numPages, int questionsPerPage, int numOptions) {
+        pages = new ArrayList<List<FakeField>>();
+        int n = 0;
+        for (int p = 0; p < numPages; p++) {
+            List<FakeField> fields = new ArrayList<FakeField>();
+            for (int q = 0; q < questionsPerPage; q++) {
+                String type = TYPES[n % TYPES.length];
+                List<String> options = new ArrayList<String>();
+                if (type.equals("boolean")) {
+                    options.add("Yes");
+                    options.add("No");
+                } else if (!type.equals("text")) {
+                    if (type.equals("dropdown")) {
+                        options.add("Select...");
+                    }
+                    for (int o = 0; o < numOptions; o++) {
+                        options.add("Option " + o);
+                    }
+                }
+                fields.add(new FakeField("Question " + n, type, options));
+                n++;
+            }
+            pages.add(fields);
+        }
+    }
+
+    /*
+     * Creates a workbook with a "Questions" sheet describing every question of the app and an empty output sheet
+     * @param sheetName - the name of the output sheet
+     * @param testQuestions - the number of questions, from the first, on "test" mode
+     * @return - a new XSSFWorkbook
+     */
+    public XSSFWorkbook createWorkbook(String sheetName, int testQuestions) {
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet questions = workbook.createSheet("Questions");
+        questions.createRow(0).createCell(0).setCellValue("Question");
+        int n = 0;
+        for (List<FakeField> fields : pages) {
+            for (FakeField field : fields) {
+                Row row = questions.createRow(++n);
+                int numOptions = field.type.equals("dropdown") ? field.options.size() - 1 : field.options.size();
+                row.createCell(0).setCellValue(field.text);
+                row.createCell(1).setCellValue(n <= testQuestions && numOptions > 0 ? "test" : "default");
+                row.createCell(2).setCellValue(field.type);
+                row.createCell(3).setCellValue(numOptions);
+                row.createCell(4).setCellValue(-1);
+            }
+        }
+        workbook.createSheet(sheetName);
+        return workbook;
+    }
+
+    /*
+     * Sets whether answering a question re-renders the page, leaving every element read before it stale
+     * @param rerender - whether answers re-render the page
+     */
+    public void setRerender(boolean rerender) {
+        this.rerender = rerender;
+    }
+
+    /*
+     * @return - the number of times the app has reached its end page
+     */
+    public int getRuns() {
+        return runs;
+    }
+
+    /*
+     * Handles a click on one of the driver's elements
+     */
+    void clicked(FakeWebElement element) {
+        if (element == link) {
+            appOpen = true;
+            page = 0;
+            done = false;
+            rendered = null;
+        } else if (element == button) {
+            if (page == pages.size() - 1) {
+                done = true;
+                runs++;
+            } else {
+                page++;
+            }
+            rendered = null;
+        } else {
+            element.setSelected(!element.isSelected() || element.getTagName().equals("option"));
+            //Opening a select is not an answer, choosing one of its options is
+            if (rerender && !element.getTagName().equals("select")) {
+                detachRendered();
+            }
+        }
+    }
+
+    /*
+     * Replaces the rendered elements of the page, as a re-render does
+     */
+    @SuppressWarnings("unchecked")
+    private void detachRendered() {
+        if (rendered == null) {
+            return;
+        }
+        for (Map<String, Object> field : rendered) {
+            for (Object option : (List<Object>) field.get("options")) {
+                ((FakeWebElement) option).detach();
+            }
+            if (field.get("input") != null) {
+                ((FakeWebElement) field.get("input")).detach();
+            }
+        }
+        rendered = null;
+    }
+
+    /*
+     * Throws if any element among the script arguments is stale, as a browser does before running the script
+     */
+    private void checkArguments(Object arg) {
+        if (arg instanceof FakeWebElement) {
+            ((FakeWebElement) arg).checkAttached();
+        } else if (arg instanceof List) {
+            for (Object o : (List<?>) arg) {
+                checkArguments(o);
+            }
+        }
+    }
+
+    /*
+     * @return - the current page as PageSnapshot reads it, with the same elements until the page changes
+     */
+    private List<Map<String, Object>> render() {
+        if (rendered == null) {
+            rendered = new ArrayList<Map<String, Object>>();
+            for (FakeField field : pages.get(page)) {
+                Map<String, Object> map = new HashMap<String, Object>();
+                List<Object> options = new ArrayList<Object>();
+                String tag = field.type.equals("dropdown") ? "option" : field.type.equals("boolean") ? "label" : "p";
+                for (String option : field.options) {
+                    options.add(new FakeWebElement(this, tag, option));
+                }
+                Object input = null;
+                if (field.type.equals("dropdown")) {
+                    input = new FakeWebElement(this, "select", "");
+                } else if (field.type.equals("text")) {
+                    input = new FakeWebElement(this, "input", "");
+                }
+                map.put("text", field.text);
+                map.put("type", field.type);
+                map.put("options", options);
+                map.put("texts", new ArrayList<Object>(field.options));
+                map.put("input", input);
+                rendered.add(map);
+            }
+        }
+        return rendered;
+    }
+
+    /*
+     * @return - the question texts on the current page joined by line breaks
+     */
+    private String signature() {
+        StringBuilder signature = new StringBuilder();
+        for (FakeField field : pages.get(page)) {
+            if (signature.length() > 0) {
+                signature.append("\n");
+            }
+            signature.append(field.text);
+        }
+        return signature.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object executeScript(String script, Object... args) {
+        checkArguments(Arrays.asList(args));
+        if (script.contains("fields.push")) {
+            return Arrays.asList(render(), done ? null : button);
+        } else if (script.contains("var answers = arguments[0]")) {
+            for (Object o : (List<Object>) args[0]) {
+                List<Object> answer = (List<Object>) o;
+                if (answer.get(0).equals("TEXT")) {
+                    ((FakeWebElement) answer.get(2)).append((String) answer.get(3));
+                } else {
+                    for (Object element : (List<Object>) answer.get(1)) {
+                        ((FakeWebElement) element).scriptClick();
+                    }
+                }
+            }
+            return null;
+        } else if (script.contains("signature.join") && script.startsWith("var labels")) {
+            return Arrays.asList(done ? "" : signature(), getCurrentUrl(), done ? null : button);
+        } else if (script.contains("var conditions = arguments[0]")) {
+            List<Object> verdicts = new ArrayList<Object>();
+            for (Object o : (List<Object>) args[0]) {
+                boolean status = ((List<Object>) o).get(0).equals(ResultCheck.STATUS);
+                verdicts.add(Arrays.asList(done, status && done ? "Document generated" : ""));
+            }
+            return verdicts;
+        } else if (script.contains("elements[i].click()")) {
+            for (Object element : (List<Object>) args[0]) {
+                ((FakeWebElement) element).scriptClick();
+            }
+            return null;
+        }
+        return null;
+    }
+
+    public Object executeAsyncScript(String script, Object... args) {
+        if (done && args[1] != null) {
+            return TransitionDetector.URL;
+        }
+        return pages.get(page).isEmpty() ? TransitionDetector.EMPTY : TransitionDetector.QUESTIONS;
+    }
+
+    public void get(String url) {
+        //Going straight to the app opens it in the current window
+        if (url.equals(APP_URL)) {
+            window = "app";
+            appOpen = true;
+            page = 0;
+            done = false;
+            rendered = null;
+        }
+    }
+
+    public String getCurrentUrl() {
+        if (!window.equals("app")) {
+            return PROJECT_URL;
+        }
+        return done ? END_URL : APP_URL;
+    }
+
+    public String getTitle() {
+        return "AfterPattern";
+    }
+
+    public List<WebElement> findElements(By by) {
+        try {
+            return Collections.singletonList(findElement(by));
+        } catch (NoSuchElementException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    public WebElement findElement(By by) {
+        String locator = by.toString();
+        if (window.equals("project") && locator.contains("//h4")) {
+            return link;
+        }
+        if (window.equals("app") && !done && locator.contains("btn-primary")) {
+            return button;
+        }
+        throw new NoSuchElementException(locator);
+    }
+
+    public String getPageSource() {
+        return "";
+    }
+
+    public void close() {
+        if (window.equals("app")) {
+            appOpen = false;
+        }
+        window = "";
+    }
+
+    public void quit() {
+        appOpen = false;
+        window = "";
+    }
+
+    public Set<String> getWindowHandles() {
+        Set<String> handles = new LinkedHashSet<String>();
+        handles.add("project");
+        if (appOpen) {
+            handles.add("app");
+        }
+        return handles;
+    }
+
+    public String getWindowHandle() {
+        return window;
+    }
+
+    public TargetLocator switchTo() {
+        return new TargetLocator() {
+            public WebDriver frame(int index) {
+                return FakeWebDriver.this;
+            }
+
+            public WebDriver frame(String nameOrId) {
+                return FakeWebDriver.this;
+            }
+
+            public WebDriver frame(WebElement frameElement) {
+                return FakeWebDriver.this;
+            }
+
+            public WebDriver parentFrame() {
+                return FakeWebDriver.this;
+            }
+
+            public WebDriver window(String nameOrHandle) {
+                window = nameOrHandle;
+                return FakeWebDriver.this;
+            }
+
+            public WebDriver defaultContent() {
+                return FakeWebDriver.this;
+            }
+
+            public WebElement activeElement() {
+                return button;
+            }
+
+            public org.openqa.selenium.Alert alert() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public Navigation navigate() {
+        return new Navigation() {
+            public void back() {
+                if (done) {
+                    done = false;
+                } else if (page > 0) {
+                    page--;
+                }
+                rendered = null;
+            }
+
+            public void forward() {
+            }
+
+            public void to(String url) {
+            }
+
+            public void to(URL url) {
+            }
+
+            public void refresh() {
+                rendered = null;
+            }
+        };
+    }
+
+    public Options manage() {
+        return new Options() {
+            public void addCookie(Cookie cookie) {
+            }
+
+            public void deleteCookieNamed(String name) {
+            }
+
+            public void deleteCookie(Cookie cookie) {
+            }
+
+            public void deleteAllCookies() {
+            }
+
+            public Set<Cookie> getCookies() {
+                return Collections.emptySet();
+            }
+
+            public Cookie getCookieNamed(String name) {
+                return null;
+            }
+
+            public Timeouts timeouts() {
+                return new Timeouts() {
+                    public Timeouts implicitlyWait(long time, TimeUnit unit) {
+                        return this;
+                    }
+
+                    public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+                        return this;
+                    }
+
+                    public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+                        return this;
+                    }
+                };
+            }
+
+            public ImeHandler ime() {
+                throw new UnsupportedOperationException();
+            }
+
+            public Window window() {
+                throw new UnsupportedOperationException();
+            }
+
+            public Logs logs() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /*
+     * The FakeField class describes one question on a fake page
+     */
+    public static class FakeField {
+        private String text;
+        private String type;
+        private List<String> options;
+
+        /*
+         * Constructs a new FakeField
+         * @param text - the question text
+         * @param type - radio, boolean, dropdown, checkbox or text
+         * @param options - the option texts (for dropdowns, including the placeholder option)
+         */
+        public FakeField(String text, String type, List<String> options) {
+            this.text = text;
+            this.type = type;
+            this.options = options;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package apptesting;
+
+import java.util.*;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+
+/*
+ * The FakeWebElement class is an in-memory stand-in for an element on a FakeWebDriver page: the project link,
+ * the continue button, an option, a select or a text input. Clicking or typing is passed to the driver.
+ */
+public class FakeWebElement implements WebElement {
+    private FakeWebDriver driver;
+    private String tag;
+    private String text;
+    private boolean selected;
+    private String value = "";
+    private boolean stale;
+
+    /*
+     * Constructs a new FakeWebElement
+     * @param driver - the FakeWebDriver the element belongs to
+     * @param tag - the element's tag name
+     * @param text - the element's text
+     */
+    public FakeWebElement(FakeWebDriver driver, String tag, String text) {
+        this.driver = driver;
+        this.tag = tag;
+        this.text = text;
+    }
+
+    public void click() {
+        checkAttached();
+        driver.clicked(this);
+    }
+
+    /*
+     * Clicks the element from a script, which holds the element itself and so can click it even once stale
+     */
+    void scriptClick() {
+        driver.clicked(this);
+    }
+
+    public void submit() {
+        click();
+    }
+
+    public void sendKeys(CharSequence... keys) {
+        checkAttached();
+        for (CharSequence key : keys) {
+            value += key;
+        }
+    }
+
+    public void clear() {
+        value = "";
+    }
+
+    public String getTagName() {
+        return tag;
+    }
+
+    public String getAttribute(String name) {
+        if (name.equals("href") && tag.equals("a")) {
+            return FakeWebDriver.APP_URL;
+        }
+        return name.equals("value") ? value : null;
+    }
+
+    public boolean isSelected() {
+        return selected;
+    }
+
+    /*
+     * Sets whether the option is selected
+     */
+    void setSelected(boolean selected) {
+        this.selected = selected;
+    }
+
+    /*
+     * Marks the element as removed from the page by a re-render
+     */
+    void detach() {
+        stale = true;
+    }
+
+    /*
+     * Throws if the element was removed from the page, as a browser does for a stale handle
+     */
+    void checkAttached() {
+        if (stale) {
+            throw new StaleElementReferenceException("The " + tag + " element " + text + " is no longer on the page");
+        }
+    }
+
+    /*
+     * Appends text as if typed in the browser
+     */
+    void append(String s) {
+        value += s;
+    }
+
+    public boolean isEnabled() {
+        checkAttached();
+        return true;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public List<WebElement> findElements(By by) {
+        return Collections.emptyList();
+    }
+
+    public WebElement findElement(By by) {
+        throw new NoSuchElementException(by.toString());
+    }
+
+    public boolean isDisplayed() {
+        return true;
+    }
+
+    public Point getLocation() {
+        return new Point(0, 0);
+    }
+
+    public Dimension getSize() {
+        return new Dimension(0, 0);
+    }
+
+    public Rectangle getRect() {
+        return new Rectangle(0, 0, 0, 0);
+    }
+
+    public String getCssValue(String propertyName) {
+        return "";
+    }
+
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        throw new UnsupportedOperationException();
+    }
+}
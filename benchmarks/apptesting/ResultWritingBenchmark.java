@@ -0,0 +1,68 @@
+package apptesting;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Benchmarks whole sweeps of 1k to 100k runs against a FakeWebDriver, printing results to an in-memory
+ * XSSFSheet or through StreamingResults. Each sweep is measured once, since it is long running.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ResultWritingBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int runs;
+
+    private FakeWebDriver driver;
+    private XSSFWorkbook workbook;
+    private File output;
+
+    @Setup(Level.Invocation)
+    public void setup() throws Exception {
+        //One page of radio questions with 10 options each on "test" mode, so the sweep has the given number of runs
+        int testQuestions = (int) Math.round(Math.log10(runs));
+        List<FakeWebDriver.FakeField> fields = new ArrayList<FakeWebDriver.FakeField>();
+        for (int q = 0; q < testQuestions; q++) {
+            List<String> options = new ArrayList<String>();
+            for (int o = 0; o < 10; o++) {
+                options.add("Option " + o);
+            }
+            fields.add(new FakeWebDriver.FakeField("Question " + q, "radio", options));
+        }
+        driver = new FakeWebDriver(Collections.singletonList(fields));
+        workbook = driver.createWorkbook("Results", testQuestions);
+        output = File.createTempFile("results", ".xlsx");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        output.delete();
+    }
+
+    @Benchmark
+    public void inMemorySheet() throws Exception {
+        SampleApp app = new SampleApp(driver, "Benchmark");
+        app.importFromExcel(workbook, "Results");
+        app.test();
+        FileOutputStream stream = new FileOutputStream(output);
+        workbook.write(stream);
+        stream.close();
+    }
+
+    @Benchmark
+    public void streaming() throws Exception {
+        StreamingResults results = new StreamingResults(output.getPath(), "Results", 100);
+        SampleApp app = new SampleApp(driver, "Benchmark");
+        app.importFromExcel(workbook, results);
+        app.test();
+        results.close();
+    }
+}
@@ -0,0 +1,50 @@
+package apptesting;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+/*
+ * Benchmarks the orchestration cost of SampleApp and the Question classes against a FakeWebDriver:
+ * one runApp() through a multi-page app, with and without batch mode, and importFromExcel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampleAppBenchmark {
+    @Param({"false", "true"})
+    public boolean batch;
+
+    @Param({"10", "100"})
+    public int questions;
+
+    private FakeWebDriver driver;
+    private XSSFWorkbook workbook;
+    private XSSFWorkbook questionsWorkbook;
+    private SampleApp app;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        driver = new FakeWebDriver(questions / 5, 5, 4);
+        workbook = driver.createWorkbook("Results", 0);
+        app = new SampleApp(driver, "Benchmark");
+        app.importFromExcel(workbook, "Results");
+        app.setBatch(batch);
+        questionsWorkbook = driver.createWorkbook("Results", questions);
+    }
+
+    @Benchmark
+    public void runApp() {
+        app.runApp();
+    }
+
+    @Benchmark
+    public SampleApp importFromExcel() {
+        SampleApp imported = new SampleApp(driver, "Benchmark");
+        imported.importFromExcel(questionsWorkbook, "Results");
+        return imported;
+    }
+}
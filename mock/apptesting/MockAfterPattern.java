@@ -0,0 +1,387 @@
+package apptesting;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+/*
+ * The MockAfterPattern class is an embedded HTTP server imitating the parts of AfterPattern the testing code
+ * relies on, so sweeps can be load tested against a local browser without the hosted service. It serves a
+ * login form (user_email, user_password, blue-btn), a project list with the app's h4 title and a link opening
+ * the app in a new tab, and the app itself, every page but the login form redirecting to it without the session
+ * cookie set by logging in: a configurable multi-page questionnaire rendered in place at a
+ * single URL with the page-block__field-label / page-block__field-input markup and a btn-primary continue
+ * button. Pages can branch on answers, every request can be delayed by an artificial latency, and the end of
+ * the app redirects to a different URL showing the generated document.
+ */
+public class MockAfterPattern {
+    private static final String CLIENT =
+        "var current = 0;"
+        + "function render(page) {"
+        + "  fetch('/app/page?index=' + page).then(function (r) { return r.text(); }).then(function (html) {"
+        + "    current = page;"
+        + "    document.getElementById('app').innerHTML = html;"
+        + "    document.getElementById('continue').onclick = next;"
+        + "  });"
+        + "}"
+        + "function next() {"
+        + "  var button = document.getElementById('continue');"
+        + "  button.className = 'btn-primary disabled';"
+        + "  var body = [];"
+        + "  var fields = document.getElementsByClassName('page-block__field');"
+        + "  for (var i = 0; i < fields.length; i++) {"
+        + "    var text = fields[i].querySelector('.page-block__field-label p').innerText;"
+        + "    var inputs = fields[i].querySelectorAll('input, select');"
+        + "    for (var j = 0; j < inputs.length; j++) {"
+        + "      var input = inputs[j];"
+        + "      var value = null;"
+        + "      if (input.type == 'radio' || input.type == 'checkbox') {"
+        + "        if (input.checked) { value = input.value; }"
+        + "      } else {"
+        + "        value = input.value;"
+        + "      }"
+        + "      if (value != null) { body.push('q=' + encodeURIComponent(text) + '&a=' + encodeURIComponent(value)); }"
+        + "    }"
+        + "  }"
+        + "  fetch('/app/next?index=' + current, {method: 'POST', body: body.join('&')})"
+        + "    .then(function (r) { return r.text(); }).then(function (result) {"
+        + "      if (result == 'done') {"
+        + "        location.href = '/app/done';"
+        + "      } else {"
+        + "        history.pushState({page: parseInt(result)}, '', location.href);"
+        + "        render(parseInt(result));"
+        + "      }"
+        + "    });"
+        + "}"
+        + "window.onpopstate = function (e) { render(e.state ? e.state.page : 0); };"
+        + "history.replaceState({page: 0}, '', location.href);"
+        + "render(0);";
+
+    private String appName;
+    private List<Page> pages = new ArrayList<Page>();
+    private long latency = 0;
+    private HttpServer server;
+
+    /*
+     * Constructs a new MockAfterPattern serving an app with the given name
+     * @param appName - the name of the app on the project page
+     */
+    public MockAfterPattern(String appName) {
+        this.appName = appName;
+    }
+
+    /*
+     * Adds a page to the end of the app
+     * @param page - the Page to add
+     */
+    public void addPage(Page page) {
+        pages.add(page);
+    }
+
+    /*
+     * Sets an artificial delay added to every response
+     * @param millis - the delay in milliseconds
+     */
+    public void setLatency(long millis) {
+        latency = millis;
+    }
+
+    /*
+     * Starts the server
+     * @param port - the port to listen on, or 0 for any free port
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(latency);
+                    route(exchange);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /*
+     * Stops the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /*
+     * @return - the base URL of the running server
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /*
+     * @return - the URL of the login page
+     */
+    public String getLoginUrl() {
+        return getUrl() + "/login";
+    }
+
+    /*
+     * @return - the URL of the project page
+     */
+    public String getProjectUrl() {
+        return getUrl() + "/projects";
+    }
+
+    /*
+     * Serves a request
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parse(exchange.getRequestURI().getRawQuery());
+        if (path.equals("/login") && exchange.getRequestMethod().equals("POST")) {
+            exchange.getResponseHeaders().add("Set-Cookie", "session=mock; Path=/");
+            exchange.getResponseHeaders().add("Location", "/projects");
+            exchange.sendResponseHeaders(303, -1);
+        } else if (path.equals("/login")) {
+            send(exchange, page("Log in", "<form method='post' action='/login'>"
+                    + "<input id='user_email' name='email'><input id='user_password' name='password' type='password'>"
+                    + "<button class='blue-btn' type='submit'>Log in</button></form>"));
+        } else if (!loggedIn(exchange)) {
+            exchange.getResponseHeaders().add("Location", "/login");
+            exchange.sendResponseHeaders(303, -1);
+        } else if (path.equals("/projects")) {
+            send(exchange, page("Projects", "<div class='project'><div><div><h4>" + escape(appName) + "</h4></div></div>"
+                    + "<div><a href='/app' target='_blank'>Run</a></div></div>"));
+        } else if (path.equals("/app")) {
+            send(exchange, page(appName, "<div id='app'></div><script>" + CLIENT + "</script>"));
+        } else if (path.equals("/app/page")) {
+            send(exchange, pages.get(Integer.parseInt(query.get("index"))).render());
+        } else if (path.equals("/app/next")) {
+            List<String[]> answers = parseAll(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            int next = pages.get(Integer.parseInt(query.get("index"))).next(Integer.parseInt(query.get("index")), answers);
+            send(exchange, next < 0 || next >= pages.size() ? "done" : String.valueOf(next));
+        } else if (path.equals("/app/done")) {
+            send(exchange, page("Done", "<h1>Document generated</h1>"));
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    /*
+     * @return - true if the request carries the session cookie set by logging in
+     */
+    private static boolean loggedIn(HttpExchange exchange) {
+        List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+        return cookies != null && cookies.toString().contains("session=mock");
+    }
+
+    /*
+     * Sends an HTML or text response
+     */
+    private static void send(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /*
+     * @return - a complete HTML document with the given title and body
+     */
+    private static String page(String title, String body) {
+        return "<!DOCTYPE html><html><head><title>" + escape(title) + "</title></head><body>" + body + "</body></html>";
+    }
+
+    /*
+     * @return - the first value of each name in a URL-encoded String
+     */
+    private static Map<String, String> parse(String s) {
+        Map<String, String> values = new HashMap<String, String>();
+        for (String[] pair : parseAll(s)) {
+            if (!values.containsKey(pair[0])) {
+                values.put(pair[0], pair[1]);
+            }
+        }
+        return values;
+    }
+
+    /*
+     * @return - the question and answer pairs in a URL-encoded String of alternating q and a values
+     */
+    private static List<String[]> parseAll(String s) {
+        List<String[]> pairs = new ArrayList<String[]>();
+        if (s == null || s.isEmpty()) {
+            return pairs;
+        }
+        String[] parts = s.split("&");
+        for (int i = 0; i < parts.length; i++) {
+            String[] pair = parts[i].split("=", 2);
+            String name = decode(pair[0]);
+            String value = pair.length > 1 ? decode(pair[1]) : "";
+            if (name.equals("q") && i + 1 < parts.length && parts[i + 1].startsWith("a=")) {
+                pairs.add(new String[] {value, decode(parts[++i].substring(2))});
+            } else {
+                pairs.add(new String[] {name, value});
+            }
+        }
+        return pairs;
+    }
+
+    /*
+     * @return - the URL-decoded String
+     */
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * @return - every byte of the stream
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /*
+     * @return - the String with HTML special characters escaped
+     */
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;").replace("\"", "&quot;");
+    }
+
+    /*
+     * Starts a mock server with a generated app and keeps it running
+     * @param args - port, number of pages, questions per page, options per question and latency in milliseconds
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int numPages = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int questionsPerPage = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int numOptions = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        String[] types = {"radio", "boolean", "dropdown", "checkbox", "text"};
+
+        MockAfterPattern mock = new MockAfterPattern("Mock App");
+        mock.setLatency(args.length > 4 ? Long.parseLong(args[4]) : 0);
+        int n = 0;
+        for (int p = 0; p < numPages; p++) {
+            Page page = new Page();
+            for (int q = 0; q < questionsPerPage; q++) {
+                String type = types[n % types.length];
+                String[] options = new String[type.equals("boolean") ? 2 : numOptions];
+                for (int o = 0; o < options.length; o++) {
+                    options[o] = type.equals("boolean") ? (o == 0 ? "Yes" : "No") : "Option " + o;
+                }
+                page.addField("Question " + n++, type, options);
+            }
+            mock.addPage(page);
+        }
+
+        //The first option of the first question skips the second page, so traversals see more than one flow
+        if (numPages > 2) {
+            mock.pages.get(0).addBranch("Question 0", "Option 0", 2);
+        }
+        mock.start(port);
+        System.out.println("Login: " + mock.getLoginUrl());
+        System.out.println("Projects: " + mock.getProjectUrl());
+    }
+
+    /*
+     * The Page class is one page of the mock app: its questions and where it leads
+     */
+    public static class Page {
+        private List<String[]> fields = new ArrayList<String[]>();
+        private List<String[]> branches = new ArrayList<String[]>();
+
+        /*
+         * Adds a question to the page
+         * @param text - the question text
+         * @param type - radio, boolean, dropdown, checkbox or text
+         * @param options - the option texts (none for text questions)
+         */
+        public void addField(String text, String type, String... options) {
+            String[] field = new String[options.length + 2];
+            field[0] = text;
+            field[1] = type;
+            System.arraycopy(options, 0, field, 2, options.length);
+            fields.add(field);
+        }
+
+        /*
+         * Goes to a different page when a question on this page is given an answer
+         * @param text - the question text
+         * @param option - the option text that takes the branch
+         * @param page - the index of the page to go to, or -1 to end the app
+         */
+        public void addBranch(String text, String option, int page) {
+            branches.add(new String[] {text, option, String.valueOf(page)});
+        }
+
+        /*
+         * @return - the index of the page to go to after this one given the answers, or -1 to end the app
+         */
+        private int next(int index, List<String[]> answers) {
+            for (String[] branch : branches) {
+                for (String[] answer : answers) {
+                    if (answer[0].equals(branch[0]) && answer[1].equals(branch[1])) {
+                        return Integer.parseInt(branch[2]);
+                    }
+                }
+            }
+            return index + 1;
+        }
+
+        /*
+         * @return - the page's HTML, using the markup the testing code looks for
+         */
+        private String render() {
+            StringBuilder html = new StringBuilder();
+            for (String[] field : fields) {
+                String text = escape(field[0]);
+                String type = field[1];
+                html.append("<div class='page-block__field'><div class='page-block__field-label'><p>").append(text)
+                        .append("</p></div><div class='page-block__field-input'>");
+                if (type.equals("dropdown")) {
+                    html.append("<select><option value=''>Select...</option>");
+                    for (int i = 2; i < field.length; i++) {
+                        html.append("<option>").append(escape(field[i])).append("</option>");
+                    }
+                    html.append("</select>");
+                } else if (type.equals("text")) {
+                    html.append("<input type='text'>");
+                } else {
+                    String input = type.equals("checkbox") ? "checkbox" : "radio";
+                    html.append("<fieldset class='").append(type).append("'>");
+                    for (int i = 2; i < field.length; i++) {
+                        String option = escape(field[i]);
+                        html.append("<label><input type='").append(input).append("' name='").append(text)
+                                .append("' value='").append(option).append("'>");
+                        html.append(type.equals("boolean") ? option : "<p>" + option + "</p>").append("</label>");
+                    }
+                    html.append("</fieldset>");
+                }
+                html.append("</div></div>");
+            }
+            html.append("<button id='continue' class='btn-primary'>Continue</button>");
+            return html.toString();
+        }
+    }
+}